@@ -0,0 +1,524 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma;
+
+import com.github.gfx.android.orma.exception.OrmaException;
+import com.github.gfx.android.orma.internal.InsertJournal;
+import com.github.gfx.android.orma.internal.OrmaConditionBase;
+
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatatypeMismatchException;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+
+/**
+ * A write-behind inserter for high-frequency inserts, e.g. logs or telemetry. {@link #execute(Object)} puts a row
+ * into an in-memory buffer and returns immediately, and the buffer is flushed in a transaction on
+ * {@link OrmaConnection#getWriterScheduler()} when it has {@code flushSize} rows or every {@code flushIntervalMillis}.
+ * A flush inserts the rows with multi-row {@code INSERT} statements as {@link Inserter#executeAll(Iterable)} does.
+ * When the buffer has {@code capacity} rows, {@link #execute(Object)} blocks until it is flushed, or flushes it
+ * by itself in the writer thread. The buffer is never flushed in the caller's transaction, whose rollback would lose
+ * the rows: flushes requested in a transaction run after it, and {@link #execute(Object)} throws if the buffer is
+ * full in a transaction.
+ *
+ * With a journal file, buffered rows are also appended to it, so they are inserted on the next
+ * {@link Builder#build()} even if the process dies before flushing. Rows are inserted at least once: if the process
+ * dies between a commit and deleting the journal, they are inserted again.
+ *
+ * Rows that violate constraints, which would never be inserted, are dropped and counted by {@link #rejectedCount()}.
+ * If a flush fails for another reason, its rows are put back into the buffer and retried by the next flush.
+ * The journal keeps them until they are inserted, so they are also retried by the next {@link Builder#build()}.
+ *
+ * <pre>{@code
+ * BufferedInserter<Event> inserter = db.relationOfEvent().inserter().buffered()
+ *         .flushSize(500)
+ *         .journal(new File(context.getFilesDir(), "events.journal"))
+ *         .build();
+ * inserter.execute(event);
+ * }</pre>
+ */
+public class BufferedInserter<Model> implements Closeable {
+
+    static final String TAG = "BufferedInserter";
+
+    final OrmaConnection conn;
+
+    final Inserter<Model> inserter;
+
+    final int capacity;
+
+    final int flushSize;
+
+    @Nullable
+    final InsertJournal journal;
+
+    final Semaphore permits;
+
+    final ArrayDeque<Object[]> buffer;
+
+    final Object flushLock = new Object();
+
+    final Scheduler.Worker worker;
+
+    final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    final AtomicLong flushCount = new AtomicLong();
+
+    final AtomicLong insertedCount = new AtomicLong();
+
+    final AtomicLong failedFlushCount = new AtomicLong();
+
+    final AtomicLong rejectedCount = new AtomicLong();
+
+    volatile boolean closed = false;
+
+    final Action0 flushAction = new Action0() {
+        @Override
+        public void call() {
+            flushScheduled.set(false);
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to flush " + inserter.schema.getTableName(), e);
+            }
+        }
+    };
+
+    BufferedInserter(Builder<Model> builder) {
+        conn = builder.inserter.conn;
+        inserter = builder.inserter;
+        capacity = builder.capacity;
+        flushSize = builder.flushSize;
+        journal = builder.journalFile != null ? new InsertJournal(builder.journalFile, builder.syncJournal) : null;
+        permits = new Semaphore(capacity);
+        buffer = new ArrayDeque<>(capacity);
+        // not the writer scheduler, which runs the flush in the caller's transaction
+        worker = Schedulers.from(new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                conn.getWriterExecutor().executeLater(command);
+            }
+        }).createWorker();
+
+        recover();
+
+        if (builder.flushIntervalMillis > 0) {
+            worker.schedulePeriodically(flushAction, builder.flushIntervalMillis, builder.flushIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void recover() {
+        if (journal == null) {
+            return;
+        }
+        checkNotInTransaction();
+        List<Object[]> rows;
+        try {
+            journal.rotate();
+            rows = journal.recover();
+        } catch (IOException e) {
+            throw new OrmaException("Failed to read the journal", e);
+        }
+        if (!rows.isEmpty()) {
+            insert(rows);
+        }
+        commitJournal();
+    }
+
+    /**
+     * Puts {@code model} into the buffer. It blocks while the buffer is full, or throws in a transaction,
+     * where the buffer can't be flushed.
+     *
+     * @param model A model to insert
+     * @throws IllegalStateException if it is closed, or if the buffer is full in a transaction
+     */
+    public void execute(@NonNull Model model) {
+        Object[] args = convertToArgs(model);
+        if (!permits.tryAcquire()) {
+            checkNotInTransaction();
+            if (conn.getWriterExecutor().isWriterThread()) {
+                // the flusher can't run while this thread is waiting for it
+                flush();
+            } else {
+                scheduleFlush();
+            }
+            permits.acquireUninterruptibly();
+        }
+        enqueue(args);
+    }
+
+    /**
+     * Puts {@code model} into the buffer unless it is full.
+     *
+     * @param model A model to insert
+     * @return {@code true} if it is buffered, or {@code false} if the buffer is full
+     * @throws IllegalStateException if it is closed
+     */
+    public boolean offer(@NonNull Model model) {
+        Object[] args = convertToArgs(model);
+        if (!permits.tryAcquire()) {
+            scheduleFlush();
+            return false;
+        }
+        enqueue(args);
+        return true;
+    }
+
+    Object[] convertToArgs(Model model) {
+        if (closed) {
+            throw new IllegalStateException("BufferedInserter is closed");
+        }
+        Object[] args = inserter.schema.convertToArgs(conn, model, inserter.withoutAutoId);
+        for (int i = 0; i < args.length; i++) {
+            args[i] = OrmaConditionBase.normalizeBindArg(args[i]);
+        }
+        return args;
+    }
+
+    void enqueue(Object[] args) {
+        int size;
+        synchronized (buffer) {
+            if (journal != null) {
+                try {
+                    journal.append(args);
+                } catch (IOException e) {
+                    permits.release();
+                    throw new OrmaException("Failed to write the journal", e);
+                }
+            }
+            buffer.add(args);
+            size = buffer.size();
+        }
+        if (size >= flushSize) {
+            scheduleFlush();
+        }
+    }
+
+    void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            worker.schedule(flushAction);
+        }
+    }
+
+    /**
+     * Inserts the buffered rows in a transaction in the current thread. Rows that violate constraints are rejected,
+     * and the others are inserted. If the transaction fails for another reason, e.g. an I/O error,
+     * the rows are put back into the buffer and the exception is thrown.
+     *
+     * @throws IllegalStateException if the current thread is in a transaction
+     */
+    @WorkerThread
+    public void flush() {
+        checkNotInTransaction();
+        synchronized (flushLock) {
+            List<Object[]> rows;
+            synchronized (buffer) {
+                rows = new ArrayList<>(buffer);
+                buffer.clear();
+                if (journal != null && !rows.isEmpty()) {
+                    try {
+                        journal.rotate();
+                    } catch (IOException e) {
+                        throw new OrmaException("Failed to rotate the journal", e);
+                    }
+                }
+            }
+            if (rows.isEmpty()) {
+                return;
+            }
+
+            try {
+                insert(rows);
+            } catch (RuntimeException e) {
+                failedFlushCount.incrementAndGet();
+                // the rows keep their permits, and their journal is not committed until they are inserted
+                synchronized (buffer) {
+                    for (int i = rows.size() - 1; i >= 0; i--) {
+                        buffer.addFirst(rows.get(i));
+                    }
+                }
+                throw e;
+            }
+            permits.release(rows.size());
+            commitJournal();
+        }
+    }
+
+    /**
+     * Rows inserted in the caller's transaction would be rolled back with it after the journal is committed,
+     * and the flusher would wait for the transaction to end.
+     */
+    void checkNotInTransaction() {
+        if (conn.inTransactionInCurrentThread()) {
+            throw new IllegalStateException("BufferedInserter can't flush in a transaction");
+        }
+    }
+
+    void insert(final List<Object[]> rows) {
+        final int[] rejected = {0};
+        try {
+            conn.transactionSync(new TransactionTask() {
+                @Override
+                public void execute() throws Exception {
+                    inserter.executeAllWithArgs(rows);
+                }
+            });
+        } catch (RuntimeException e) {
+            if (!isRejected(e)) {
+                throw e;
+            }
+            // some rows can never be inserted, so they are found and dropped to insert the others
+            conn.transactionSync(new TransactionTask() {
+                @Override
+                public void execute() throws Exception {
+                    rejected[0] = insertOrReject(rows);
+                }
+            });
+        }
+        flushCount.incrementAndGet();
+        insertedCount.addAndGet(rows.size() - rejected[0]);
+        rejectedCount.addAndGet(rejected[0]);
+    }
+
+    /**
+     * Inserts {@code rows} in a savepoint, or bisects them if a row violates a constraint.
+     *
+     * @return The number of rows rejected
+     */
+    int insertOrReject(final List<Object[]> rows) throws Exception {
+        Exception e = conn.executeInSavepoint(new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                inserter.executeAllWithArgs(rows);
+            }
+        });
+        if (e == null) {
+            return 0;
+        }
+        if (!isRejected(e)) {
+            throw e;
+        }
+        if (rows.size() == 1) {
+            Log.w(TAG, "Rejected a row of " + inserter.schema.getTableName(), e);
+            return 1;
+        }
+        int half = rows.size() / 2;
+        return insertOrReject(rows.subList(0, half)) + insertOrReject(rows.subList(half, rows.size()));
+    }
+
+    /**
+     * @return {@code true} if {@code e} is caused by a row that can never be inserted, e.g. a constraint violation
+     */
+    static boolean isRejected(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLiteConstraintException || cause instanceof SQLiteDatatypeMismatchException) {
+                return true;
+            }
+            // some SQLite bindings, e.g. Robolectric's, don't map the error codes to the exceptions
+            if (cause.getMessage() != null && (cause.getMessage().contains("constraint failed")
+                    || cause.getMessage().contains("datatype mismatch"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void commitJournal() {
+        if (journal != null) {
+            try {
+                journal.commit();
+            } catch (IOException e) {
+                throw new OrmaException("Failed to delete the journal", e);
+            }
+        }
+    }
+
+    /**
+     * @return The number of rows waiting for flush
+     */
+    public int size() {
+        synchronized (buffer) {
+            return buffer.size();
+        }
+    }
+
+    /**
+     * @return The number of transactions to flush rows, including the recovery from the journal
+     */
+    public long flushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * @return The number of rows inserted
+     */
+    public long insertedCount() {
+        return insertedCount.get();
+    }
+
+    /**
+     * @return The number of rows dropped because they violate constraints
+     */
+    public long rejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return The number of failed flushes, whose rows are retried by the next flush
+     */
+    public long failedFlushCount() {
+        return failedFlushCount.get();
+    }
+
+    /**
+     * Flushes the buffer and stops the periodic flush. {@link #execute(Object)} throws after {@code close()}.
+     */
+    @WorkerThread
+    @Override
+    public void close() {
+        closed = true;
+        worker.unsubscribe();
+        try {
+            flush();
+        } finally {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to close the journal", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BufferedInserter{" +
+                "table=" + inserter.schema.getTableName() +
+                ", size=" + size() +
+                ", flushCount=" + flushCount +
+                ", insertedCount=" + insertedCount +
+                ", rejectedCount=" + rejectedCount +
+                ", failedFlushCount=" + failedFlushCount +
+                '}';
+    }
+
+    public static class Builder<Model> {
+
+        final Inserter<Model> inserter;
+
+        int capacity = 10000;
+
+        int flushSize = 500;
+
+        long flushIntervalMillis = 1000;
+
+        @Nullable
+        File journalFile;
+
+        boolean syncJournal = false;
+
+        public Builder(@NonNull Inserter<Model> inserter) {
+            this.inserter = inserter;
+        }
+
+        /**
+         * @param capacity The max number of rows in the buffer, after which {@link BufferedInserter#execute(Object)}
+         *                 blocks.
+         *                 The default is {@code 10000}.
+         * @return the receiver itself
+         */
+        public Builder<Model> capacity(@IntRange(from = 1) int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("capacity must be greater than 0: " + capacity);
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param flushSize The number of rows that triggers a flush. The default is {@code 500}.
+         * @return the receiver itself
+         */
+        public Builder<Model> flushSize(@IntRange(from = 1) int flushSize) {
+            if (flushSize < 1) {
+                throw new IllegalArgumentException("flushSize must be greater than 0: " + flushSize);
+            }
+            this.flushSize = flushSize;
+            return this;
+        }
+
+        /**
+         * @param flushIntervalMillis The interval of periodic flushes, or {@code 0} to flush only by size.
+         *                            The default is {@code 1000}.
+         * @return the receiver itself
+         */
+        public Builder<Model> flushIntervalMillis(@IntRange(from = 0) long flushIntervalMillis) {
+            this.flushIntervalMillis = flushIntervalMillis;
+            return this;
+        }
+
+        /**
+         * @param journalFile A file to keep buffered rows across process death, or {@code null} for no journal
+         * @return the receiver itself
+         */
+        public Builder<Model> journal(@Nullable File journalFile) {
+            return journal(journalFile, false);
+        }
+
+        /**
+         * @param journalFile A file to keep buffered rows across process death, or {@code null} for no journal
+         * @param sync        {@code true} to call {@code fsync(2)} on each row, which also survives power loss
+         * @return the receiver itself
+         */
+        public Builder<Model> journal(@Nullable File journalFile, boolean sync) {
+            this.journalFile = journalFile;
+            this.syncJournal = sync;
+            return this;
+        }
+
+        /**
+         * Creates a {@link BufferedInserter}, inserting the rows left in the journal by the previous process.
+         *
+         * @return A new {@link BufferedInserter}
+         */
+        @WorkerThread
+        @NonNull
+        public BufferedInserter<Model> build() {
+            return new BufferedInserter<>(this);
+        }
+    }
+}
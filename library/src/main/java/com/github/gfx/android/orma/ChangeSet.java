@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Changes committed by a transaction, or by a statement outside of transactions.
+ *
+ * Primary keys are recorded only if {@link OrmaConfiguration#rowChangeFeed(boolean)} is enabled, and they are the net
+ * changes of the commit: e.g. a row inserted and then deleted in the same transaction is not reported at all.
+ * If a table is modified in a way that can't be tracked by rows, e.g. by {@link OrmaConnection#execSQL(String,
+ * Object...)}, {@link #hasRowChanges(String)} returns {@code false} and you should reload the table.
+ *
+ * Primary keys are the values stored in the database, i.e. {@link Long}, {@link Double}, or {@link String}.
+ */
+public class ChangeSet {
+
+    final Set<String> tableNames;
+
+    final Set<String> untrackedTableNames;
+
+    final Map<String, Set<Object>> inserted;
+
+    final Map<String, Set<Object>> updated;
+
+    final Map<String, Set<Object>> deleted;
+
+    /**
+     * Makes a snapshot of changes. The collections are copied, so the {@code ChangeSet} is not affected by
+     * modifications to them.
+     *
+     * @param tableNames          The names of the modified tables
+     * @param untrackedTableNames The names of the tables modified without primary keys
+     * @param inserted            The primary keys of the rows inserted, for each table
+     * @param updated             The primary keys of the rows updated, for each table
+     * @param deleted             The primary keys of the rows deleted, for each table
+     */
+    public ChangeSet(@NonNull Set<String> tableNames, @NonNull Set<String> untrackedTableNames,
+            @NonNull Map<String, Set<Object>> inserted, @NonNull Map<String, Set<Object>> updated,
+            @NonNull Map<String, Set<Object>> deleted) {
+        this.tableNames = Collections.unmodifiableSet(new HashSet<>(tableNames));
+        this.untrackedTableNames = Collections.unmodifiableSet(new HashSet<>(untrackedTableNames));
+        this.inserted = copyOf(inserted);
+        this.updated = copyOf(updated);
+        this.deleted = copyOf(deleted);
+    }
+
+    public boolean isEmpty() {
+        return tableNames.isEmpty();
+    }
+
+    /**
+     * @return The names of the modified tables
+     */
+    @NonNull
+    public Set<String> getTableNames() {
+        return tableNames;
+    }
+
+    /**
+     * @param tableName The name of a table
+     * @return {@code true} if all the changes of the table are reported by primary keys
+     */
+    public boolean hasRowChanges(@NonNull String tableName) {
+        return tableNames.contains(tableName) && !untrackedTableNames.contains(tableName);
+    }
+
+    /**
+     * @param tableName The name of a table
+     * @return The primary keys of the rows inserted
+     */
+    @NonNull
+    public Set<Object> getInsertedKeys(@NonNull String tableName) {
+        return keysOf(inserted, tableName);
+    }
+
+    /**
+     * @param tableName The name of a table
+     * @return The primary keys of the rows updated, including the rows replaced
+     */
+    @NonNull
+    public Set<Object> getUpdatedKeys(@NonNull String tableName) {
+        return keysOf(updated, tableName);
+    }
+
+    /**
+     * @param tableName The name of a table
+     * @return The primary keys of the rows deleted
+     */
+    @NonNull
+    public Set<Object> getDeletedKeys(@NonNull String tableName) {
+        return keysOf(deleted, tableName);
+    }
+
+    static Map<String, Set<Object>> copyOf(Map<String, Set<Object>> keys) {
+        Map<String, Set<Object>> copy = new HashMap<>();
+        for (Map.Entry<String, Set<Object>> entry : keys.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                copy.put(entry.getKey(), Collections.unmodifiableSet(new HashSet<>(entry.getValue())));
+            }
+        }
+        return copy;
+    }
+
+    static Set<Object> keysOf(Map<String, Set<Object>> keys, String tableName) {
+        Set<Object> set = keys.get(tableName);
+        return set != null ? set : Collections.emptySet();
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSet{" +
+                "tableNames=" + tableNames +
+                ", untrackedTableNames=" + untrackedTableNames +
+                ", inserted=" + inserted +
+                ", updated=" + updated +
+                ", deleted=" + deleted +
+                '}';
+    }
+}
@@ -33,6 +33,8 @@ public abstract class ColumnDef<Model, T> {
 
     public static int UNIQUE = 0x20;
 
+    static final String IMPLICIT_PRIMARY_KEY = "_rowid_";
+
     public final Schema<Model> schema;
 
     public final String name;
@@ -52,7 +54,12 @@ public abstract class ColumnDef<Model, T> {
     }
 
     public StringBuilder getEscapedName() {
-        return new StringBuilder().append('"').append(name).append('"');
+        StringBuilder sb = new StringBuilder();
+        if (name.equals(IMPLICIT_PRIMARY_KEY)) {
+            // the implicit primary key is not visible through the joins of direct associations unless qualified
+            sb.append(schema.getEscapedTableName()).append('.');
+        }
+        return sb.append('"').append(name).append('"');
     }
 
     private boolean checkFlags(int flags) {
@@ -46,6 +46,6 @@ public abstract class Deleter<Model, D extends Deleter<Model, ?>> extends OrmaCo
             public void call(SingleSubscriber<? super Integer> subscriber) {
                 subscriber.onSuccess(execute());
             }
-        });
+        }).subscribeOn(conn.getWriterScheduler());
     }
 }
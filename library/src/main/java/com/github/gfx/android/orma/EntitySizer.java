@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Measures a model in an entity cache, e.g. an estimated number of bytes.
+ *
+ * @param <Model> The type of a model
+ * @see OrmaConfiguration#entityCache(Schema, int, EntitySizer)
+ */
+public interface EntitySizer<Model> {
+
+    /**
+     * @param model A model to measure
+     * @return The size of {@code model}, which must not change while it is cached
+     */
+    int sizeOf(@NonNull Model model);
+}
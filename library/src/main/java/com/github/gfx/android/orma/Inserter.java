@@ -16,44 +16,134 @@
 package com.github.gfx.android.orma;
 
 import com.github.gfx.android.orma.annotation.OnConflict;
+import com.github.gfx.android.orma.internal.OrmaConditionBase;
 
-import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import rx.Observable;
 import rx.Single;
 import rx.SingleSubscriber;
 import rx.Subscriber;
 
 /**
- * Represents a prepared statement to insert models in batch.
+ * Represents a prepared statement to insert models in batch. The statement is compiled via
+ * {@link com.github.gfx.android.orma.internal.StatementCache}, so inserters for the same SQL share it.
  */
 public class Inserter<Model> {
 
+    /**
+     * SQLite's default {@code SQLITE_MAX_VARIABLE_NUMBER}.
+     */
+    static final int MAX_BIND_ARGS = 999;
+
+    /**
+     * SQLite's default {@code SQLITE_MAX_COMPOUND_SELECT}, which limits rows in a multi-row {@code VALUES} clause
+     * before SQLite 3.8.8.
+     */
+    static final int MAX_ROWS_PER_STATEMENT = 500;
+
     final OrmaConnection conn;
 
     final Schema<Model> schema;
 
-    final boolean withoutAutoId;
+    @OnConflict
+    final int onConflictAlgorithm;
 
-    final SQLiteStatement statement;
+    final boolean withoutAutoId;
 
     final String sql;
 
+    final int argsPerRow;
+
+    final int rowsPerStatement;
+
+    /**
+     * The index of the primary key in {@link Schema#convertToArgs(OrmaConnection, Object, boolean)},
+     * or {@code -1} if it is given by SQLite as the row id.
+     */
+    final int primaryKeyArgIndex;
+
+    String multiRowSql;
+
     public Inserter(OrmaConnection conn, Schema<Model> schema, @OnConflict int onConflictAlgorithm, boolean withoutAutoId) {
-        SQLiteDatabase db = conn.getWritableDatabase();
         this.conn = conn;
         this.schema = schema;
+        this.onConflictAlgorithm = onConflictAlgorithm;
         this.withoutAutoId = withoutAutoId;
         sql = schema.getInsertStatement(onConflictAlgorithm, withoutAutoId);
-        statement = db.compileStatement(sql);
+        argsPerRow = countArgsPerRow(schema, withoutAutoId);
+        primaryKeyArgIndex = findPrimaryKeyArgIndex(schema, withoutAutoId);
+        rowsPerStatement = (supportsMultiRowValues() && argsPerRow > 0)
+                ? Math.max(1, Math.min(MAX_BIND_ARGS / argsPerRow, MAX_ROWS_PER_STATEMENT)) : 1;
     }
 
     public Inserter(OrmaConnection conn, Schema<Model> schema) {
         this(conn, schema, OnConflict.NONE, true);
     }
 
+    static int countArgsPerRow(Schema<?> schema, boolean withoutAutoId) {
+        int n = 0;
+        for (ColumnDef<?, ?> column : schema.getColumns()) {
+            if (!(withoutAutoId && column.isAutoValue())) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    static int findPrimaryKeyArgIndex(Schema<?> schema, boolean withoutAutoId) {
+        int n = 0;
+        for (ColumnDef<?, ?> column : schema.getColumns()) {
+            if (!(withoutAutoId && column.isAutoValue())) {
+                if (column.isPrimaryKey()) {
+                    return n;
+                }
+                n++;
+            }
+        }
+        return -1;
+    }
+
+    // multi-row VALUES requires SQLite 3.7.11, which is bundled with Android 4.1
+    static boolean supportsMultiRowValues() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+    }
+
+    /**
+     * @return The max number of rows inserted by a statement in {@link #executeAll(Iterable)}.
+     */
+    @IntRange(from = 1)
+    public int getRowsPerStatement() {
+        return rowsPerStatement;
+    }
+
+    /**
+     * @param rows The number of rows, which is up to {@link #getRowsPerStatement()}
+     * @return An {@code INSERT} statement with {@code rows} rows in its {@code VALUES} clause
+     */
+    String getMultiRowInsertStatement(int rows) {
+        // the statement ends with " VALUES (?,?,...)"
+        String values = sql.substring(sql.lastIndexOf(" VALUES ") + " VALUES ".length());
+        if (multiRowSql == null) {
+            StringBuilder sb = new StringBuilder(sql.length() + (values.length() + 1) * (rowsPerStatement - 1));
+            sb.append(sql);
+            for (int i = 1; i < rowsPerStatement; i++) {
+                sb.append(',');
+                sb.append(values);
+            }
+            multiRowSql = sb.toString();
+        }
+        // a statement with fewer rows is a prefix of the one with the max rows
+        return multiRowSql.substring(0, sql.length() + (values.length() + 1) * (rows - 1));
+    }
+
     /**
      * <p>Inserts {@code model} into a table. Ths method does not modify the {@code model} even if a new row id is given to
      * it.</p>
@@ -65,8 +155,22 @@ public class Inserter<Model> {
         if (conn.trace) {
             conn.trace(sql, schema.convertToArgs(conn, model, withoutAutoId));
         }
-        schema.bindArgs(conn, statement, model, withoutAutoId, 0);
-        return statement.executeInsert();
+        SQLiteStatement statement = conn.acquireStatement(conn.getWritableDatabase(), sql);
+        try {
+            schema.bindArgs(conn, statement, model, withoutAutoId, 0);
+            long rowId = statement.executeInsert();
+            if (rowId != -1) {
+                // REPLACE may delete other rows than the one with the same primary key
+                if (conn.rowChangeFeed && onConflictAlgorithm != OnConflict.REPLACE) {
+                    conn.notifyInserted(schema, Collections.singletonList(getPrimaryKey(model, rowId)));
+                } else {
+                    conn.notifyChanged(schema);
+                }
+            }
+            return rowId;
+        } finally {
+            conn.releaseStatement(statement);
+        }
     }
 
     /**
@@ -77,12 +181,180 @@ public class Inserter<Model> {
         return execute(modelFactory.call());
     }
 
+    /**
+     * Inserts {@code models} with multi-row {@code INSERT} statements, each of which has up to
+     * {@link #getRowsPerStatement()} rows. Note that if a row violates a constraint, all the rows in the same
+     * statement are not inserted, so use it in a transaction.
+     *
+     * @param models model objects to insert
+     */
     public void executeAll(@NonNull Iterable<Model> models) {
+        if (rowsPerStatement == 1) {
+            for (Model model : models) {
+                execute(model);
+            }
+            return;
+        }
+
+        List<Model> rows = new ArrayList<>(rowsPerStatement);
         for (Model model : models) {
-            execute(model);
+            rows.add(model);
+            if (rows.size() == rowsPerStatement) {
+                executeMultiRowInsert(rows);
+                rows.clear();
+            }
+        }
+        if (rows.size() == 1) {
+            execute(rows.get(0));
+        } else if (!rows.isEmpty()) {
+            // the statement for the rest is cached by its size as well
+            executeMultiRowInsert(rows);
         }
     }
 
+    void executeMultiRowInsert(List<Model> rows) {
+        String multiRowSql = getMultiRowInsertStatement(rows.size());
+        if (conn.trace) {
+            List<Object> args = new ArrayList<>(argsPerRow * rows.size());
+            for (Model model : rows) {
+                for (Object arg : schema.convertToArgs(conn, model, withoutAutoId)) {
+                    args.add(arg);
+                }
+            }
+            conn.trace(multiRowSql, args.toArray());
+        }
+        SQLiteStatement statement = conn.acquireStatement(conn.getWritableDatabase(), multiRowSql);
+        try {
+            int offset = 0;
+            for (Model model : rows) {
+                schema.bindArgs(conn, statement, model, withoutAutoId, offset);
+                offset += argsPerRow;
+            }
+            long lastRowId = statement.executeInsert();
+            notifyMultiRowInserted(rows, lastRowId);
+        } finally {
+            conn.releaseStatement(statement);
+        }
+    }
+
+    /**
+     * Inserts rows with the values given by {@link Schema#convertToArgs(OrmaConnection, Object, boolean)}, with
+     * multi-row {@code INSERT} statements as {@link #executeAll(Iterable)} does.
+     *
+     * @param rows The values of rows
+     */
+    void executeAllWithArgs(@NonNull List<Object[]> rows) {
+        int size = rows.size();
+        for (int i = 0; i < size; i += rowsPerStatement) {
+            int end = Math.min(i + rowsPerStatement, size);
+            if (end - i == 1) {
+                executeWithArgs(rows.get(i));
+            } else {
+                executeMultiRowInsertWithArgs(rows.subList(i, end));
+            }
+        }
+    }
+
+    void executeMultiRowInsertWithArgs(List<Object[]> rows) {
+        String multiRowSql = getMultiRowInsertStatement(rows.size());
+        Object[] args = new Object[argsPerRow * rows.size()];
+        int offset = 0;
+        for (Object[] row : rows) {
+            System.arraycopy(row, 0, args, offset, argsPerRow);
+            offset += argsPerRow;
+        }
+        conn.trace(multiRowSql, args);
+        SQLiteStatement statement = conn.acquireStatement(conn.getWritableDatabase(), multiRowSql);
+        try {
+            OrmaConnection.bindArgs(statement, args);
+            long lastRowId = statement.executeInsert();
+            if (!tracksMultiRowKeys()) {
+                conn.notifyChanged(schema);
+                return;
+            }
+            List<Object> keys = new ArrayList<>(rows.size());
+            long rowId = lastRowId - rows.size() + 1;
+            for (Object[] row : rows) {
+                keys.add(getPrimaryKey(row, rowId++));
+            }
+            conn.notifyInserted(schema, keys);
+        } finally {
+            conn.releaseStatement(statement);
+        }
+    }
+
+    /**
+     * Rows inserted by a statement are given consecutive row ids, so the keys are known from the last one
+     * unless some rows are ignored or replaced on conflict.
+     */
+    boolean tracksMultiRowKeys() {
+        return conn.rowChangeFeed && (onConflictAlgorithm == OnConflict.NONE
+                || onConflictAlgorithm == OnConflict.ABORT || onConflictAlgorithm == OnConflict.ROLLBACK);
+    }
+
+    void notifyMultiRowInserted(List<Model> rows, long lastRowId) {
+        if (!tracksMultiRowKeys()) {
+            conn.notifyChanged(schema);
+            return;
+        }
+        List<Object> keys = new ArrayList<>(rows.size());
+        long rowId = lastRowId - rows.size() + 1;
+        for (Model model : rows) {
+            keys.add(getPrimaryKey(model, rowId++));
+        }
+        conn.notifyInserted(schema, keys);
+    }
+
+    Object getPrimaryKey(Model model, long rowId) {
+        if (primaryKeyArgIndex == -1) {
+            return rowId;
+        }
+        return getPrimaryKey(schema.convertToArgs(conn, model, withoutAutoId), rowId);
+    }
+
+    Object getPrimaryKey(Object[] args, long rowId) {
+        if (primaryKeyArgIndex == -1) {
+            return rowId;
+        }
+        return OrmaConditionBase.normalizeBindArg(args[primaryKeyArgIndex]);
+    }
+
+    /**
+     * Inserts a row with the values given by {@link Schema#convertToArgs(OrmaConnection, Object, boolean)}.
+     *
+     * @param args The values of a row
+     * @return The last inserted row id
+     */
+    long executeWithArgs(@NonNull Object[] args) {
+        conn.trace(sql, args);
+        SQLiteStatement statement = conn.acquireStatement(conn.getWritableDatabase(), sql);
+        try {
+            OrmaConnection.bindArgs(statement, args);
+            long rowId = statement.executeInsert();
+            if (rowId != -1) {
+                if (conn.rowChangeFeed && onConflictAlgorithm != OnConflict.REPLACE) {
+                    conn.notifyInserted(schema, Collections.singletonList(getPrimaryKey(args, rowId)));
+                } else {
+                    conn.notifyChanged(schema);
+                }
+            }
+            return rowId;
+        } finally {
+            conn.releaseStatement(statement);
+        }
+    }
+
+    /**
+     * Creates a write-behind inserter with the same statement, which returns immediately and inserts models
+     * in background.
+     *
+     * @return A builder of {@link BufferedInserter}
+     */
+    @NonNull
+    public BufferedInserter.Builder<Model> buffered() {
+        return new BufferedInserter.Builder<>(this);
+    }
+
     /**
      * {@link Single} wrapper to {@code execute(Model)}
      *
@@ -96,7 +368,7 @@ public class Inserter<Model> {
                 long rowId = execute(model);
                 subscriber.onSuccess(rowId);
             }
-        });
+        }).subscribeOn(conn.getWriterScheduler());
     }
 
     /**
@@ -113,7 +385,7 @@ public class Inserter<Model> {
                 long rowId = execute(modelFactory);
                 subscriber.onSuccess(rowId);
             }
-        });
+        }).subscribeOn(conn.getWriterScheduler());
     }
 
     /**
@@ -132,7 +404,7 @@ public class Inserter<Model> {
                 }
                 subscriber.onCompleted();
             }
-        });
+        }).subscribeOn(conn.getWriterScheduler());
     }
 
 }
@@ -17,6 +17,7 @@ package com.github.gfx.android.orma;
 
 import com.github.gfx.android.orma.adapter.TypeAdapter;
 import com.github.gfx.android.orma.adapter.TypeAdapterRegistry;
+import com.github.gfx.android.orma.internal.EntityCache;
 import com.github.gfx.android.orma.migration.ManualStepMigration;
 import com.github.gfx.android.orma.migration.MigrationEngine;
 import com.github.gfx.android.orma.migration.OrmaMigration;
@@ -28,6 +29,10 @@ import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
 /**
  * This class represents Orma options, and it is the base class of {@code OrmaDatabase.Builder}.
  */
@@ -61,6 +66,34 @@ public abstract class OrmaConfiguration<T extends OrmaConfiguration<?>> {
 
     AccessThreadConstraint writeOnMainThread;
 
+    int statementCacheSize = 32;
+
+    long cursorWindowSize = 0;
+
+    boolean cursorPrefetch = false;
+
+    long groupCommitWindowMillis = 0;
+
+    int groupCommitMaxBatchSize = 100;
+
+    boolean rowChangeFeed = false;
+
+    long queryTimeoutMillis = 0;
+
+    final List<EntityCache<?>> entityCaches = new ArrayList<>();
+
+    boolean identityMap = false;
+
+    int queryCacheSize = 0;
+
+    boolean queryCacheByDefault = false;
+
+    @Nullable
+    Executor readerExecutor;
+
+    @Nullable
+    Executor writerExecutor;
+
     public OrmaConfiguration(@NonNull Context context) {
         this.context = context.getApplicationContext();
         this.debug = extractDebuggable(context);
@@ -235,6 +268,210 @@ public abstract class OrmaConfiguration<T extends OrmaConfiguration<?>> {
         return (T) this;
     }
 
+    /**
+     * Sets the max number of idle compiled statements in the LRU pool shared by all the threads.
+     * The default is {@code 32}.
+     *
+     * @param statementCacheSize The size of {@link com.github.gfx.android.orma.internal.StatementCache}
+     * @return the receiver itself
+     */
+    public T statementCacheSize(@IntRange(from = 1) int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+        return (T) this;
+    }
+
+    /**
+     * Sets the default size of {@link android.database.CursorWindow} for queries. The default is {@code 0}, which
+     * means the platform default (2MB on most devices). A custom size is honored only on Android 9.0 or later.
+     *
+     * @param cursorWindowSize The size of cursor windows in bytes, or {@code 0} for the platform default
+     * @return the receiver itself
+     * @see Selector#cursorWindowSize(long)
+     */
+    public T cursorWindowSize(@IntRange(from = 0) long cursorWindowSize) {
+        this.cursorWindowSize = cursorWindowSize;
+        return (T) this;
+    }
+
+    /**
+     * Sets the default of the prefetch hint for queries. If {@code true}, the first cursor window is filled
+     * when the query is executed, not when the cursor is accessed first. The default is {@code false}.
+     *
+     * @param cursorPrefetch {@code true} to fill the first window on query
+     * @return the receiver itself
+     * @see Selector#prefetch(boolean)
+     */
+    public T cursorPrefetch(boolean cursorPrefetch) {
+        this.cursorPrefetch = cursorPrefetch;
+        return (T) this;
+    }
+
+    /**
+     * Sets the time to wait for more tasks before committing a batch of {@code transactionAsync()}.
+     * The default is {@code 0}, which means that only the tasks queued while the writer is busy are committed together.
+     *
+     * @param groupCommitWindowMillis The time window in milliseconds
+     * @return the receiver itself
+     * @see com.github.gfx.android.orma.internal.GroupCommitExecutor
+     */
+    public T groupCommitWindowMillis(@IntRange(from = 0) long groupCommitWindowMillis) {
+        this.groupCommitWindowMillis = groupCommitWindowMillis;
+        return (T) this;
+    }
+
+    /**
+     * Sets the max number of tasks of {@code transactionAsync()} committed in a physical transaction.
+     * The default is {@code 100}.
+     *
+     * @param groupCommitMaxBatchSize The max number of tasks in a transaction
+     * @return the receiver itself
+     * @see com.github.gfx.android.orma.internal.GroupCommitExecutor
+     */
+    public T groupCommitMaxBatchSize(@IntRange(from = 1) int groupCommitMaxBatchSize) {
+        this.groupCommitMaxBatchSize = groupCommitMaxBatchSize;
+        return (T) this;
+    }
+
+    /**
+     * Enables the primary keys in {@link ChangeSet}s of {@link OrmaConnection#observeRowChanges()}.
+     * The default is {@code false} because it costs a query for the primary keys before each update and delete.
+     *
+     * @param rowChangeFeed {@code true} to record the primary keys of inserted, updated, and deleted rows
+     * @return the receiver itself
+     */
+    public T rowChangeFeed(boolean rowChangeFeed) {
+        this.rowChangeFeed = rowChangeFeed;
+        return (T) this;
+    }
+
+    /**
+     * Sets the time limit of queries, after which they are canceled with
+     * {@link com.github.gfx.android.orma.exception.QueryTimeoutException}. It covers executing a query and filling
+     * the first cursor window, so cursors are prefetched if it is set. The default is {@code 0}, which means no limit.
+     * It is ignored before Android 4.1, which doesn't support {@link android.os.CancellationSignal}.
+     *
+     * @param queryTimeoutMillis The time limit in milliseconds, or {@code 0} for no limit
+     * @return the receiver itself
+     * @see Selector#cancellationSignal(android.os.CancellationSignal)
+     */
+    public T queryTimeoutMillis(@IntRange(from = 0) long queryTimeoutMillis) {
+        this.queryTimeoutMillis = queryTimeoutMillis;
+        return (T) this;
+    }
+
+    /**
+     * Enables the entity cache of {@code schema}, which keeps models looked up by primary keys, e.g. via
+     * {@link SingleAssociation}, up to {@code maxEntries}. It is useful for small tables referred to frequently.
+     * The cache is invalidated on commits that modify the table, and it is not used in transactions.
+     * Cached models are shared, so they must not be modified.
+     *
+     * @param schema     The schema of a table to cache
+     * @param maxEntries The max number of models to cache
+     * @return the receiver itself
+     * @see OrmaConnection#getEntityCache(Schema)
+     */
+    public <Model> T entityCache(@NonNull Schema<Model> schema, @IntRange(from = 1) int maxEntries) {
+        return entityCache(schema, maxEntries, null);
+    }
+
+    /**
+     * Enables the entity cache of {@code schema} bounded by the total size of models, e.g. in bytes.
+     *
+     * @param schema  The schema of a table to cache
+     * @param maxSize The max size of models in {@code sizer}'s unit
+     * @param sizer   A measure of models, or {@code null} to count models
+     * @return the receiver itself
+     * @see #entityCache(Schema, int)
+     */
+    public <Model> T entityCache(@NonNull Schema<Model> schema, @IntRange(from = 1) int maxSize,
+            @Nullable EntitySizer<? super Model> sizer) {
+        for (int i = 0; i < entityCaches.size(); i++) {
+            if (entityCaches.get(i).getSchema().getTableName().equals(schema.getTableName())) {
+                entityCaches.remove(i);
+                break;
+            }
+        }
+        entityCaches.add(new EntityCache<>(schema, maxSize, sizer));
+        return (T) this;
+    }
+
+    /**
+     * Enables identity maps of transactions: in a transaction, including {@link OrmaConnection#readSnapshot(
+     * TransactionTask)}, a row loaded by {@link Selector}s with all the columns or by {@link SingleAssociation}s is
+     * hydrated only once, and the same instance is returned for it until the transaction ends. Models are evicted
+     * when their rows are written in the transaction. The default is {@code false}.
+     *
+     * Models are shared in the transaction, including tasks of {@code transactionAsync()} committed together,
+     * so modifications to a model are visible to the other lookups of the row.
+     *
+     * @param identityMap {@code true} to enable identity maps
+     * @return the receiver itself
+     * @see com.github.gfx.android.orma.internal.IdentityMap
+     */
+    public T identityMap(boolean identityMap) {
+        this.identityMap = identityMap;
+        return (T) this;
+    }
+
+    /**
+     * Enables the query cache for the queries which opt in by {@link Selector#cache(boolean)}.
+     *
+     * @param maxSize The max number of rows in the cache
+     * @return the receiver itself
+     * @see #queryCache(int, boolean)
+     */
+    public T queryCache(@IntRange(from = 1) int maxSize) {
+        return queryCache(maxSize, false);
+    }
+
+    /**
+     * Enables the query cache, which keeps the results of {@link Selector#count()} and {@link Selector#toList()}
+     * keyed by their SQL and bind args. A result is evicted on commits that modify any table the query refers to,
+     * and the cache is not used in transactions. Cached models are shared, so they must not be modified.
+     *
+     * @param maxSize   The max number of rows in the cache, where a {@code count()} is counted as a row
+     * @param byDefault {@code true} to cache all the queries except ones that opt out by
+     *                  {@link Selector#cache(boolean)}, or {@code false} to cache only ones that opt in
+     * @return the receiver itself
+     * @see OrmaConnection#getQueryCache()
+     */
+    public T queryCache(@IntRange(from = 1) int maxSize, boolean byDefault) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be greater than 0: " + maxSize);
+        }
+        this.queryCacheSize = maxSize;
+        this.queryCacheByDefault = byDefault;
+        return (T) this;
+    }
+
+    /**
+     * Sets an executor for reading in background, e.g. {@link Selector#executeAsObservable()}.
+     * Under WAL, reads run in parallel, so a thread pool is preferable.
+     * The default is a pool of {@code 4} threads.
+     *
+     * @param readerExecutor An executor for reading
+     * @return the receiver itself
+     * @see OrmaConnection#getReaderScheduler()
+     */
+    public T readerExecutor(@NonNull Executor readerExecutor) {
+        this.readerExecutor = readerExecutor;
+        return (T) this;
+    }
+
+    /**
+     * Sets an executor for writing in background, e.g. {@code transactionAsync()} and
+     * {@link Inserter#executeAsObservable(Object)}. It must run commands one by one to serialize writes.
+     * The default is a single thread.
+     *
+     * @param writerExecutor A serial executor for writing
+     * @return the receiver itself
+     * @see OrmaConnection#getWriterScheduler()
+     */
+    public T writerExecutor(@NonNull Executor writerExecutor) {
+        this.writerExecutor = writerExecutor;
+        return (T) this;
+    }
+
     @NonNull
     protected abstract String getSchemaHash();
 
@@ -19,6 +19,18 @@ import com.github.gfx.android.orma.adapter.TypeAdapter;
 import com.github.gfx.android.orma.adapter.TypeAdapterRegistry;
 import com.github.gfx.android.orma.exception.DatabaseAccessOnMainThreadException;
 import com.github.gfx.android.orma.exception.NoValueException;
+import com.github.gfx.android.orma.exception.QueryTimeoutException;
+import com.github.gfx.android.orma.internal.CancellationSignals;
+import com.github.gfx.android.orma.internal.ChangeTracker;
+import com.github.gfx.android.orma.internal.EntityCache;
+import com.github.gfx.android.orma.internal.GroupCommitExecutor;
+import com.github.gfx.android.orma.internal.IdentityMap;
+import com.github.gfx.android.orma.internal.OrmaConditionBase;
+import com.github.gfx.android.orma.internal.OrmaCursor;
+import com.github.gfx.android.orma.internal.QueryCache;
+import com.github.gfx.android.orma.internal.ReadOnlyDatabasePool;
+import com.github.gfx.android.orma.internal.StatementCache;
+import com.github.gfx.android.orma.internal.WriterExecutor;
 import com.github.gfx.android.orma.migration.MigrationEngine;
 import com.github.gfx.android.orma.migration.sqliteparser.SQLiteParserUtils;
 
@@ -27,12 +39,15 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.database.sqlite.SQLiteStatement;
-import android.os.AsyncTask;
 import android.os.Build;
+import android.os.CancellationSignal;
 import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -40,9 +55,34 @@ import android.support.annotation.WorkerThread;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action1;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
 
 /**
  * Low-level interface to Orma database connection.
@@ -55,6 +95,12 @@ public class OrmaConnection extends SQLiteOpenHelper {
 
     static final String[] countSelections = {"COUNT(*)"};
 
+    static final int READER_THREADS = 4;
+
+    static final String SAVEPOINT = "orma_savepoint";
+
+    static final String SNAPSHOT = "orma_snapshot";
+
     final List<Schema<?>> schemas;
 
     final MigrationEngine migration;
@@ -75,6 +121,56 @@ public class OrmaConnection extends SQLiteOpenHelper {
 
     final AccessThreadConstraint writeOnMainThread;
 
+    final StatementCache statementCache;
+
+    final long cursorWindowSize;
+
+    final boolean cursorPrefetch;
+
+    final AtomicLong cursorWindowFillCount = new AtomicLong();
+
+    final Executor readerExecutor;
+
+    final WriterExecutor writerExecutor;
+
+    @Nullable
+    volatile SQLiteDatabase openedDatabase;
+
+    // the database of readSnapshot() in progress in the current thread
+    final ThreadLocal<SQLiteDatabase> snapshotDatabase = new ThreadLocal<>();
+
+    // whether the transaction in progress in each thread is exclusive, which yieldIfContended() resumes with
+    final ThreadLocal<Boolean> exclusiveTransaction = new ThreadLocal<>();
+
+    @Nullable
+    ReadOnlyDatabasePool readOnlyDatabasePool;
+
+    final Scheduler readerScheduler;
+
+    final Scheduler writerScheduler;
+
+    final GroupCommitExecutor groupCommitExecutor;
+
+    final ChangeTracker changeTracker = new ChangeTracker();
+
+    final List<Pattern> tableNamePatterns;
+
+    final boolean rowChangeFeed;
+
+    final long queryTimeoutMillis;
+
+    @Nullable
+    final ScheduledExecutorService timeoutExecutor;
+
+    final Map<String, EntityCache<?>> entityCaches;
+
+    final boolean identityMap;
+
+    @Nullable
+    final QueryCache queryCache;
+
+    final boolean queryCacheByDefault;
+
     public OrmaConnection(@NonNull OrmaConfiguration<?> configuration, List<Schema<?>> schemas) {
         super(configuration.context, configuration.name, null, SCHEMA_VERSION);
         this.schemas = schemas;
@@ -87,12 +183,125 @@ public class OrmaConnection extends SQLiteOpenHelper {
         this.trace = configuration.trace;
         this.readOnMainThread = configuration.readOnMainThread;
         this.writeOnMainThread = configuration.readOnMainThread;
+        this.statementCache = new StatementCache(configuration.statementCacheSize);
+        this.cursorWindowSize = configuration.cursorWindowSize;
+        this.cursorPrefetch = configuration.cursorPrefetch;
+        this.readerExecutor = configuration.readerExecutor != null
+                ? configuration.readerExecutor : createReaderExecutor();
+        this.writerExecutor = new WriterExecutor(configuration.writerExecutor != null
+                ? configuration.writerExecutor : createWriterExecutor());
+        this.readerScheduler = Schedulers.from(inlineInTransaction(readerExecutor));
+        this.writerScheduler = Schedulers.from(inlineInTransaction(writerExecutor));
+        this.groupCommitExecutor = new GroupCommitExecutor(this, writerExecutor,
+                configuration.groupCommitWindowMillis, configuration.groupCommitMaxBatchSize);
+        this.rowChangeFeed = configuration.rowChangeFeed;
+        this.queryTimeoutMillis = CancellationSignals.isSupported() ? configuration.queryTimeoutMillis : 0;
+        this.timeoutExecutor = queryTimeoutMillis > 0 ? createTimeoutExecutor() : null;
+        this.identityMap = configuration.identityMap;
+        this.tableNamePatterns = new ArrayList<>(schemas.size());
+        for (Schema<?> schema : schemas) {
+            tableNamePatterns.add(Pattern.compile("\\b" + Pattern.quote(schema.getTableName()) + "\\b",
+                    Pattern.CASE_INSENSITIVE));
+        }
+        for (Schema<?> schema : schemas) {
+            changeTracker.addJoinedTables(schema.getTableName(), findTableNames(schema.getSelectFromTableClause()));
+        }
+        this.entityCaches = new HashMap<>();
+        for (EntityCache<?> entityCache : configuration.entityCaches) {
+            entityCache.setTableNames(findTableNames(entityCache.getSchema().getSelectFromTableClause()));
+            entityCaches.put(entityCache.getSchema().getTableName(), entityCache);
+        }
+        this.queryCache = configuration.queryCacheSize > 0 ? new QueryCache(configuration.queryCacheSize) : null;
+        this.queryCacheByDefault = configuration.queryCacheByDefault;
+        if (!entityCaches.isEmpty() || queryCache != null) {
+            // invalidated synchronously on the committing thread
+            changeTracker.observe().subscribe(new Action1<ChangeSet>() {
+                @Override
+                public void call(ChangeSet changes) {
+                    for (EntityCache<?> entityCache : entityCaches.values()) {
+                        entityCache.invalidate(changes);
+                    }
+                    if (queryCache != null) {
+                        queryCache.invalidate(changes);
+                    }
+                }
+            });
+        }
 
         if (wal) {
             enableWal();
         }
     }
 
+    static Executor createReaderExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(READER_THREADS, READER_THREADS,
+                10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "Orma-Reader-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Wraps {@code executor} to run commands in the calling thread if it is in a transaction. Other threads can't
+     * see the uncommitted changes or the snapshot of the transaction, and a writer thread would wait for the
+     * transaction to end, which deadlocks if the calling thread waits for the command.
+     */
+    Executor inlineInTransaction(final Executor executor) {
+        return new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                if (inTransactionInCurrentThread()) {
+                    command.run();
+                } else {
+                    executor.execute(command);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return {@code true} if a transaction is in progress in the current thread, including one started directly
+     * by {@link SQLiteDatabase#beginTransaction()}
+     */
+    boolean inTransactionInCurrentThread() {
+        if (changeTracker.inTransaction()) {
+            return true;
+        }
+        // it must not open the database, which may be in the main thread
+        SQLiteDatabase db = openedDatabase;
+        return db != null && db.isOpen() && db.inTransaction();
+    }
+
+    static Executor createWriterExecutor() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "Orma-Writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    static ScheduledExecutorService createTimeoutExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "Orma-Timeout");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
     private boolean isRunningOnJellyBean() {
         return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
     }
@@ -134,9 +343,31 @@ public class OrmaConnection extends SQLiteOpenHelper {
                 }
             }
         }
+        SQLiteDatabase snapshot = snapshotDatabase.get();
+        if (snapshot != null) {
+            return snapshot;
+        }
         return super.getReadableDatabase();
     }
 
+    @Override
+    public synchronized void close() {
+        if (readOnlyDatabasePool != null) {
+            readOnlyDatabasePool.close();
+            readOnlyDatabasePool = null;
+        }
+        super.close();
+    }
+
+    /**
+     * @return The cache of compiled statements used by {@link Inserter}, {@link #update(Schema, ContentValues, String,
+     * Object[])}, {@link #delete(Schema, String, Object[])}, and {@link #execSQL(String, Object...)}.
+     */
+    @NonNull
+    public StatementCache getStatementCache() {
+        return statementCache;
+    }
+
     @Deprecated
     @SuppressWarnings("deprecated")
     @NonNull
@@ -163,13 +394,13 @@ public class OrmaConnection extends SQLiteOpenHelper {
 
         ColumnDef<T, ?> primaryKey = schema.getPrimaryKey();
         String whereClause = primaryKey.getEscapedName() + " = ?";
-        String primaryKeyValue;
+        Object primaryKeyValue;
         if (primaryKey.isAutoValue()) {
-            primaryKeyValue = Long.toString(id);
+            primaryKeyValue = id;
         } else {
-            primaryKeyValue = String.valueOf(primaryKey.get(model));
+            primaryKeyValue = primaryKey.get(model);
         }
-        String[] whereArgs = {primaryKeyValue};
+        Object[] whereArgs = {primaryKeyValue};
         T createdModel = querySingle(schema, schema.getEscapedColumnNames(), whereClause, whereArgs, null, null, null, 0);
         if (createdModel == null) {
             throw new NoValueException("Can't retrieve the created model for " + model + " (rowid=" + id + ")");
@@ -177,38 +408,358 @@ public class OrmaConnection extends SQLiteOpenHelper {
         return createdModel;
     }
 
-    public int update(Schema<?> schema, ContentValues values, String whereClause, String[] whereArgs) {
+    /**
+     * @param db  A writable database
+     * @param sql An SQL statement
+     * @return A compiled statement taken from {@link StatementCache}, which must be passed to
+     * {@link #releaseStatement(SQLiteStatement)} instead of closed
+     */
+    @NonNull
+    SQLiteStatement acquireStatement(@NonNull SQLiteDatabase db, @NonNull String sql) {
+        return statementCache.acquire(db, sql);
+    }
+
+    void releaseStatement(@NonNull SQLiteStatement statement) {
+        statementCache.release(statement);
+    }
+
+    /**
+     * Binds {@code bindArgs} to {@code program} with their types, i.e. {@link SQLiteProgram#bindLong(int, long)} for
+     * integers, {@link SQLiteProgram#bindDouble(int, double)} for floating point numbers, and
+     * {@link SQLiteProgram#bindBlob(int, byte[])} for {@code byte[]}.
+     *
+     * @param program  A statement or a query
+     * @param bindArgs Arguments to bind, or {@code null}
+     */
+    static void bindArgs(@NonNull SQLiteProgram program, @Nullable Object[] bindArgs) {
+        if (bindArgs == null) {
+            return;
+        }
+        for (int i = 0; i < bindArgs.length; i++) {
+            DatabaseUtils.bindObjectToProgram(program, i + 1, OrmaConditionBase.normalizeBindArg(bindArgs[i]));
+        }
+    }
+
+    public int update(Schema<?> schema, ContentValues values, String whereClause, Object[] whereArgs) {
+        if (values.size() == 0) {
+            throw new IllegalArgumentException("Empty values");
+        }
         SQLiteDatabase db = getWritableDatabase();
-        return db.update(schema.getEscapedTableName(), values, whereClause, whereArgs);
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("UPDATE ");
+        sql.append(schema.getEscapedTableName());
+        sql.append(" SET ");
+
+        int nWhereArgs = whereArgs != null ? whereArgs.length : 0;
+        Object[] bindArgs = new Object[values.size() + nWhereArgs];
+        int i = 0;
+        for (String column : values.keySet()) {
+            if (i != 0) {
+                sql.append(',');
+            }
+            sql.append(column);
+            sql.append("=?");
+            bindArgs[i++] = values.get(column);
+        }
+        for (int j = 0; j < nWhereArgs; j++) {
+            bindArgs[i++] = whereArgs[j];
+        }
+        if (!TextUtils.isEmpty(whereClause)) {
+            sql.append(" WHERE ");
+            sql.append(whereClause);
+        }
+
+        // the primary keys queried before the update are not the ones after it
+        ColumnDef<?, ?> primaryKey = schema.getPrimaryKey();
+        boolean updatesPrimaryKey = values.containsKey(primaryKey.name)
+                || values.containsKey(primaryKey.getEscapedName().toString());
+        return executeUpdateDelete(db, schema, sql.toString(), bindArgs, whereClause, whereArgs,
+                !updatesPrimaryKey, false);
+    }
+
+    /**
+     * Executes an {@code UPDATE} or {@code DELETE} statement and records the change. If the row change feed is enabled,
+     * the primary keys of the rows are queried before the statement in the same transaction.
+     */
+    int executeUpdateDelete(SQLiteDatabase db, Schema<?> schema, String sql, Object[] bindArgs,
+            @Nullable String whereClause, @Nullable Object[] whereArgs, boolean tracksRows, boolean delete) {
+        if (!rowChangeFeed || !tracksRows) {
+            int count = executeUpdateDelete(db, sql, bindArgs);
+            if (count > 0) {
+                notifyChanged(schema);
+            }
+            return count;
+        }
+
+        boolean inTransaction = db.inTransaction();
+        if (!inTransaction) {
+            beginTransaction(db, false);
+            changeTracker.begin();
+        }
+        boolean successful = false;
+        try {
+            List<Object> keys = queryPrimaryKeys(schema, whereClause, whereArgs);
+            int count = executeUpdateDelete(db, sql, bindArgs);
+            if (count > 0) {
+                if (keys == null || keys.size() != count) {
+                    notifyChanged(schema);
+                } else if (delete) {
+                    changeTracker.deleted(schema.getTableName(), keys);
+                } else {
+                    changeTracker.updated(schema.getTableName(), keys);
+                }
+            }
+            if (!inTransaction) {
+                db.setTransactionSuccessful();
+            }
+            successful = true;
+            return count;
+        } finally {
+            if (!inTransaction) {
+                endTransaction(db, successful);
+            }
+        }
+    }
+
+    int executeUpdateDelete(SQLiteDatabase db, String sql, Object[] bindArgs) {
+        trace(sql, bindArgs);
+        SQLiteStatement statement = acquireStatement(db, sql);
+        try {
+            bindArgs(statement, bindArgs);
+            return statement.executeUpdateDelete();
+        } finally {
+            releaseStatement(statement);
+        }
+    }
+
+    /**
+     * @return The primary keys of the rows matched, or {@code null} if some of them can't be used as keys
+     */
+    @Nullable
+    List<Object> queryPrimaryKeys(Schema<?> schema, @Nullable String whereClause, @Nullable Object[] whereArgs) {
+        String[] columns = {schema.getPrimaryKey().getEscapedName().toString()};
+        Cursor cursor = query(schema, columns, whereClause, whereArgs, null, null, null, null);
+        try {
+            List<Object> keys = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                Object key = readPrimaryKey(cursor, 0);
+                if (key == null) {
+                    return null;
+                }
+                keys.add(key);
+            }
+            return keys;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return The value of the column as a primary key, or {@code null} if it is {@code NULL} or {@code BLOB}
+     */
+    @Nullable
+    static Object readPrimaryKey(Cursor cursor, int columnIndex) {
+        switch (cursor.getType(columnIndex)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(columnIndex);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(columnIndex);
+            case Cursor.FIELD_TYPE_STRING:
+                return cursor.getString(columnIndex);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return The default size of cursor windows in bytes, or {@code 0} for the platform default
+     */
+    public long getCursorWindowSize() {
+        return cursorWindowSize;
+    }
+
+    /**
+     * @return The default of the prefetch hint for cursors
+     */
+    public boolean getCursorPrefetch() {
+        return cursorPrefetch;
+    }
+
+    /**
+     * @return The time limit of queries in milliseconds, or {@code 0} for no limit
+     */
+    public long getQueryTimeoutMillis() {
+        return queryTimeoutMillis;
+    }
+
+    /**
+     * @return The number of times cursor windows have been filled by cursors created by this connection
+     */
+    public long getCursorWindowFillCount() {
+        return cursorWindowFillCount.get();
     }
 
     @NonNull
-    public Cursor rawQuery(@NonNull String sql, @NonNull String... bindArgs) {
+    public Cursor rawQuery(@NonNull String sql, @NonNull Object... bindArgs) {
+        return rawQuery(sql, bindArgs, cursorWindowSize, cursorPrefetch);
+    }
+
+    /**
+     * Executes a query with cursor options.
+     *
+     * @param sql              An SQL statement
+     * @param bindArgs         Arguments bound to the statement with their types
+     * @param cursorWindowSize The size of the cursor window in bytes, or {@code 0} for the platform default
+     * @param prefetch         If {@code true}, the first window is filled before returning the cursor,
+     *                         so the query runs in the calling thread instead of the first access to the cursor
+     * @return An {@link OrmaCursor}
+     */
+    @NonNull
+    public Cursor rawQuery(@NonNull String sql, @Nullable Object[] bindArgs, long cursorWindowSize, boolean prefetch) {
+        return rawQuery(sql, bindArgs, cursorWindowSize, prefetch, null);
+    }
+
+    /**
+     * Executes a query with cursor options and a cancellation signal. If the signal is canceled, the query, or
+     * a window fill of the cursor, throws {@link android.os.OperationCanceledException}.
+     * If {@link OrmaConfiguration#queryTimeoutMillis(long)} is set, the cursor is prefetched and
+     * {@link QueryTimeoutException} is thrown on timeout.
+     *
+     * @param sql                An SQL statement
+     * @param bindArgs           Arguments bound to the statement with their types
+     * @param cursorWindowSize   The size of the cursor window in bytes, or {@code 0} for the platform default
+     * @param prefetch           If {@code true}, the first window is filled before returning the cursor
+     * @param cancellationSignal A signal to cancel the query, or {@code null}. It is ignored before Android 4.1.
+     * @return An {@link OrmaCursor}
+     */
+    @NonNull
+    public Cursor rawQuery(@NonNull String sql, @Nullable final Object[] bindArgs, final long cursorWindowSize,
+            boolean prefetch, @Nullable CancellationSignal cancellationSignal) {
         trace(sql, bindArgs);
         SQLiteDatabase db = getReadableDatabase();
-        return db.rawQuery(sql, bindArgs);
+
+        ScheduledFuture<?> timeout = null;
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        if (cancellationSignal != null || queryTimeoutMillis > 0) {
+            // the caller's signal is not given to SQLite, which would take its listener from the linked ones
+            final CancellationSignal signal = CancellationSignals.link(cancellationSignal);
+            if (queryTimeoutMillis > 0) {
+                timeout = timeoutExecutor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        timedOut.set(true);
+                        signal.cancel();
+                    }
+                }, queryTimeoutMillis, TimeUnit.MILLISECONDS);
+                prefetch = true;
+            }
+            cancellationSignal = signal;
+        }
+
+        // selectionArgs of rawQueryWithFactory() are bound as strings, so typed args are bound in the factory
+        SQLiteDatabase.CursorFactory factory = new SQLiteDatabase.CursorFactory() {
+            @Override
+            public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable,
+                    SQLiteQuery query) {
+                bindArgs(query, bindArgs);
+                return new OrmaCursor(masterQuery, editTable, query, cursorWindowSize, cursorWindowFillCount);
+            }
+        };
+        Cursor cursor = null;
+        try {
+            if (cancellationSignal != null && CancellationSignals.isSupported()) {
+                cursor = db.rawQueryWithFactory(factory, sql, null, null, cancellationSignal);
+            } else {
+                cursor = db.rawQueryWithFactory(factory, sql, null, null);
+            }
+            if (prefetch) {
+                cursor.getCount();
+            }
+            return cursor;
+        } catch (RuntimeException e) {
+            if (cursor != null) {
+                cursor.close();
+            }
+            // the timer has run, so it is the timeout that canceled the query
+            if (timedOut.get()) {
+                throw new QueryTimeoutException("Query timed out in " + queryTimeoutMillis + "ms: " + sql, e);
+            }
+            throw e;
+        } finally {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
     }
 
-    public long rawQueryForLong(@NonNull String sql, @NonNull String... bindArgs) {
+    public long rawQueryForLong(@NonNull String sql, @NonNull Object... bindArgs) {
         trace(sql, bindArgs);
         SQLiteDatabase db = getReadableDatabase();
-        return DatabaseUtils.longForQuery(db, sql, bindArgs);
+        SQLiteStatement statement = db.compileStatement(sql);
+        try {
+            bindArgs(statement, bindArgs);
+            return statement.simpleQueryForLong();
+        } finally {
+            statement.close();
+        }
     }
 
-    public Cursor query(Schema<?> schema, String[] columns, String whereClause, String[] bindArgs,
+    public Cursor query(Schema<?> schema, String[] columns, String whereClause, Object[] bindArgs,
             String groupBy, String having, String orderBy, String limit) {
+        return query(schema, columns, whereClause, bindArgs, groupBy, having, orderBy, limit,
+                cursorWindowSize, cursorPrefetch);
+    }
+
+    public Cursor query(Schema<?> schema, String[] columns, String whereClause, Object[] bindArgs,
+            String groupBy, String having, String orderBy, String limit, long cursorWindowSize, boolean prefetch) {
+        return query(schema, columns, whereClause, bindArgs, groupBy, having, orderBy, limit,
+                cursorWindowSize, prefetch, null);
+    }
+
+    public Cursor query(Schema<?> schema, String[] columns, String whereClause, Object[] bindArgs,
+            String groupBy, String having, String orderBy, String limit, long cursorWindowSize, boolean prefetch,
+            @Nullable CancellationSignal cancellationSignal) {
         String sql = SQLiteQueryBuilder.buildQueryString(
-                false, schema.getEscapedTableName(), columns, whereClause, groupBy, having, orderBy, limit);
-        return rawQuery(sql, bindArgs);
+                false, schema.getSelectFromTableClause(), columns, whereClause, groupBy, having, orderBy, limit);
+        return rawQuery(sql, bindArgs, cursorWindowSize, prefetch, cancellationSignal);
     }
 
-    public int count(Schema<?> schema, String whereClause, String[] whereArgs) {
+    public int count(Schema<?> schema, String whereClause, Object[] whereArgs) {
         String sql = SQLiteQueryBuilder.buildQueryString(
-                false, schema.getEscapedTableName(), countSelections, whereClause, null, null, null, null);
+                false, schema.getSelectFromTableClause(), countSelections, whereClause, null, null, null, null);
         return (int) rawQueryForLong(sql, whereArgs);
     }
 
-    public <T> T querySingle(Schema<T> schema, String[] columns, String whereClause, String[] whereArgs, String groupBy,
+    /**
+     * Creates a model from a cursor with all the columns of {@code schema}. If the identity map of the transaction is
+     * enabled, it returns the model of the same row loaded before, without hydrating the cursor.
+     *
+     * @param schema The schema of the model
+     * @param cursor A cursor with the columns of {@link Schema#getEscapedColumnNames()}
+     * @return A model
+     */
+    @NonNull
+    public <T> T newModelFromCursor(@NonNull Schema<T> schema, @NonNull Cursor cursor) {
+        IdentityMap identityMap = getIdentityMap();
+        if (identityMap == null) {
+            return schema.newModelFromCursor(this, cursor);
+        }
+        // the implicit primary key, _rowid_, is not in the cursor
+        int primaryKeyIndex = schema.getColumns().indexOf(schema.getPrimaryKey());
+        Object key = primaryKeyIndex != -1 ? readPrimaryKey(cursor, primaryKeyIndex) : null;
+        if (key == null) {
+            return schema.newModelFromCursor(this, cursor);
+        }
+        T model = identityMap.get(schema, key);
+        if (model == null) {
+            model = schema.newModelFromCursor(this, cursor);
+            identityMap.put(schema, key, model);
+        }
+        return model;
+    }
+
+    public <T> T querySingle(Schema<T> schema, String[] columns, String whereClause, Object[] whereArgs, String groupBy,
             String having, String orderBy, long offset) {
         SQLiteCursor cursor = (SQLiteCursor) query(schema, columns, whereClause, whereArgs, groupBy, having, orderBy,
                 offset + ",1");
@@ -224,70 +775,484 @@ public class OrmaConnection extends SQLiteOpenHelper {
         }
     }
 
-    public int delete(@NonNull Schema<?> schema, @Nullable String whereClause, @Nullable String[] whereArgs) {
+    /**
+     * Finds a model by its primary key. If the entity cache of {@code schema} is enabled, the model is looked up
+     * in the cache first, and cached after the query, except in transactions, which may see uncommitted changes.
+     * In a transaction, the identity map is used instead if it is enabled.
+     *
+     * @param schema     The schema of the model
+     * @param primaryKey The value of the primary key
+     * @return The model, or {@code null} if not found
+     * @see OrmaConfiguration#entityCache(Schema, int)
+     */
+    @Nullable
+    public <T> T querySingleByPrimaryKey(@NonNull Schema<T> schema, @NonNull Object primaryKey) {
+        Object key = OrmaConditionBase.normalizeBindArg(primaryKey);
+        IdentityMap identityMap = getIdentityMap();
+        if (identityMap != null) {
+            T model = identityMap.get(schema, key);
+            if (model != null) {
+                return model;
+            }
+        }
+        EntityCache<T> entityCache = entityCacheFor(schema);
+        long generation = 0;
+        if (entityCache != null) {
+            T model = entityCache.get(key);
+            if (model != null) {
+                return model;
+            }
+            generation = entityCache.generation();
+        }
+
+        String whereClause = schema.getPrimaryKey().getEscapedName() + " = ?";
+        Object[] whereArgs = {key};
+        T model = querySingle(schema, schema.getEscapedColumnNames(), whereClause, whereArgs, null, null, null, 0);
+        if (entityCache != null && model != null) {
+            entityCache.put(key, model, generation);
+        }
+        if (identityMap != null && model != null) {
+            identityMap.put(schema, key, model);
+        }
+        return model;
+    }
+
+    /**
+     * @param schema The schema of a table
+     * @return The entity cache of {@code schema}, or {@code null} if it is not enabled
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    public <T> EntityCache<T> getEntityCache(@NonNull Schema<T> schema) {
+        return (EntityCache<T>) entityCaches.get(schema.getTableName());
+    }
+
+    /**
+     * @return The identity map of the transaction in the current thread, or {@code null} if no transaction is
+     * in progress or it is not enabled
+     */
+    @Nullable
+    public IdentityMap getIdentityMap() {
+        return identityMap ? changeTracker.identityMap() : null;
+    }
+
+    /**
+     * @return The query cache, or {@code null} if it is not enabled
+     * @see OrmaConfiguration#queryCache(int, boolean)
+     */
+    @Nullable
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * @param cache {@code true} or {@code false} if a query opts in or out of the cache, or {@code null} for
+     *              the default
+     * @return The query cache if it is available for the query in the current thread
+     */
+    @Nullable
+    QueryCache queryCacheFor(@Nullable Boolean cache) {
+        if (queryCache == null || changeTracker.inTransaction()) {
+            return null;
+        }
+        return (cache != null ? cache : queryCacheByDefault) ? queryCache : null;
+    }
+
+    /**
+     * @return The entity cache of {@code schema} if it is available in the current thread
+     */
+    @Nullable
+    <T> EntityCache<T> entityCacheFor(@NonNull Schema<T> schema) {
+        if (entityCaches.isEmpty() || changeTracker.inTransaction()) {
+            return null;
+        }
+        return getEntityCache(schema);
+    }
+
+    public int delete(@NonNull Schema<?> schema, @Nullable String whereClause, @Nullable Object[] whereArgs) {
         SQLiteDatabase db = getWritableDatabase();
 
         String sql = "DELETE FROM " + schema.getEscapedTableName()
                 + (!TextUtils.isEmpty(whereClause) ? " WHERE " + whereClause : "");
-        trace(sql, whereArgs);
-        SQLiteStatement statement = db.compileStatement(sql);
-        statement.bindAllArgsAsStrings(whereArgs);
-        try {
-            return statement.executeUpdateDelete();
-        } finally {
-            statement.close();
-        }
+        return executeUpdateDelete(db, schema, sql, whereArgs, whereClause, whereArgs, true, true);
     }
 
+    /**
+     * Runs {@code task} in a non-exclusive transaction. If a transaction is already in progress in the current thread,
+     * {@code task} runs in a {@code SAVEPOINT} as {@link #transactionSync(TransactionTask)} does.
+     *
+     * @param task A task to run
+     */
     public void transactionNonExclusiveSync(@NonNull TransactionTask task) {
         SQLiteDatabase db = getReadableDatabase();
+        if (db.inTransaction()) {
+            transactionInSavepoint(task);
+            return;
+        }
         trace("begin transaction (non exclusive)", null);
-        db.beginTransactionNonExclusive();
+        beginTransaction(db, false);
+        changeTracker.begin();
 
+        boolean successful = false;
         try {
             task.execute();
             db.setTransactionSuccessful();
+            successful = true;
         } catch (Exception e) {
             task.onError(e);
         } finally {
-            db.endTransaction();
+            endTransaction(db, successful);
             trace("end transaction (non exclusive)", null);
         }
     }
 
-    public void transactionNonExclusiveAsync(@NonNull final TransactionTask task) {
-        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
-            @Override
-            public void run() {
-                transactionNonExclusiveSync(task);
-            }
-        });
+    /**
+     * Queues {@code task} to the writer. It may be committed together with other async tasks.
+     *
+     * @param task A task to run in a non-exclusive transaction
+     * @see GroupCommitExecutor
+     */
+    public void transactionNonExclusiveAsync(@NonNull TransactionTask task) {
+        groupCommitExecutor.execute(task, false);
+    }
+
+    /**
+     * Queues {@code task} to the writer with a priority.
+     *
+     * @param priority The priority of the task
+     * @param task     A task to run in a non-exclusive transaction
+     * @see #transactionAsync(WritePriority, TransactionTask)
+     */
+    public void transactionNonExclusiveAsync(@NonNull WritePriority priority, @NonNull TransactionTask task) {
+        groupCommitExecutor.execute(task, false, priority);
     }
 
+    /**
+     * Runs {@code task} in a transaction.
+     *
+     * If a transaction is already in progress in the current thread, {@code task} runs in a {@code SAVEPOINT}
+     * as a nested transaction: if {@code task} fails, only its changes are rolled back and
+     * {@link TransactionTask#onError(Exception)} is called. The outer transaction goes on unless {@code onError()}
+     * throws, e.g. by default.
+     *
+     * @param task A task to run
+     */
     @WorkerThread
     public void transactionSync(@NonNull TransactionTask task) {
         SQLiteDatabase db = getWritableDatabase();
+        if (db.inTransaction()) {
+            transactionInSavepoint(task);
+            return;
+        }
         trace("begin transaction", null);
-        db.beginTransaction();
+        beginTransaction(db, true);
+        changeTracker.begin();
 
+        boolean successful = false;
         try {
             task.execute();
             db.setTransactionSuccessful();
+            successful = true;
         } catch (Exception e) {
             task.onError(e);
         } finally {
-            db.endTransaction();
+            endTransaction(db, successful);
             trace("end transaction", null);
         }
     }
 
-    public void transactionAsync(@NonNull final TransactionTask task) {
-        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
-            @Override
-            public void run() {
-                transactionSync(task);
+    /**
+     * Runs {@code task} in a read transaction, so the queries in the current thread see a consistent snapshot of the
+     * database, e.g. {@code count()} and {@code toList()} of a {@link Selector} agree with each other even if another
+     * thread commits in the meantime. The queries also share one connection instead of acquiring it for each.
+     *
+     * The snapshot is a deferred transaction on a read-only connection, so under WAL writers in other threads commit
+     * without waiting for {@code task}, and {@code task} must not write. It uses
+     * {@code SQLiteDatabase#beginTransactionReadOnly()} on Android 15 or later, and a read-only database of its own
+     * before that. An in-memory database has only one connection, which writers wait for anyway, so it falls back to
+     * a non-exclusive transaction. If a transaction is already in progress in the current thread,
+     * {@code task} just runs in it.
+     *
+     * @param task A task to run
+     */
+    public void readSnapshot(@NonNull TransactionTask task) {
+        SQLiteDatabase db = getReadableDatabase();
+        if (snapshotDatabase.get() != null || db.inTransaction()) {
+            try {
+                task.execute();
+            } catch (Exception e) {
+                task.onError(e);
             }
-        });
+            return;
+        }
+
+        if (beginTransactionReadOnly(db)) {
+            trace("begin transaction (read only)", null);
+            exclusiveTransaction.set(false);
+        } else if (getDatabaseName() != null) {
+            readSnapshotInReadOnlyDatabase(getReadOnlyDatabasePool(db), task);
+            return;
+        } else {
+            trace("begin transaction (read snapshot)", null);
+            beginTransaction(db, false);
+        }
+        changeTracker.begin();
+
+        boolean successful = false;
+        try {
+            task.execute();
+            db.setTransactionSuccessful();
+            successful = true;
+        } catch (Exception e) {
+            task.onError(e);
+        } finally {
+            endTransaction(db, successful);
+            trace("end transaction (read snapshot)", null);
+        }
+    }
+
+    void readSnapshotInReadOnlyDatabase(ReadOnlyDatabasePool pool, TransactionTask task) {
+        SQLiteDatabase db = pool.acquire();
+        try {
+            // SAVEPOINT in autocommit mode begins a deferred transaction. SQLiteDatabase doesn't know it,
+            // but the database is used only by this thread until it is released.
+            execSQL(db, "SAVEPOINT " + SNAPSHOT);
+        } catch (RuntimeException e) {
+            db.close();
+            throw e;
+        }
+        snapshotDatabase.set(db);
+        changeTracker.begin();
+
+        boolean successful = false;
+        try {
+            task.execute();
+            successful = true;
+        } catch (Exception e) {
+            task.onError(e);
+        } finally {
+            snapshotDatabase.remove();
+            try {
+                execSQL(db, "RELEASE " + SNAPSHOT);
+                pool.release(db);
+            } catch (RuntimeException e) {
+                db.close();
+                throw e;
+            } finally {
+                changeTracker.end(successful);
+            }
+        }
+    }
+
+    synchronized ReadOnlyDatabasePool getReadOnlyDatabasePool(SQLiteDatabase db) {
+        if (readOnlyDatabasePool == null || !readOnlyDatabasePool.getPath().equals(db.getPath())) {
+            if (readOnlyDatabasePool != null) {
+                readOnlyDatabasePool.close();
+            }
+            readOnlyDatabasePool = new ReadOnlyDatabasePool(db.getPath(), READER_THREADS);
+        }
+        return readOnlyDatabasePool;
+    }
+
+    /**
+     * Calls {@code SQLiteDatabase#beginTransactionReadOnly()}, which is a public API of Android 15.
+     *
+     * @return {@code true} if a read-only transaction has begun
+     */
+    static boolean beginTransactionReadOnly(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT < 35) {
+            return false;
+        }
+        Method method;
+        try {
+            method = SQLiteDatabase.class.getMethod("beginTransactionReadOnly");
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+        try {
+            method.invoke(db);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (IllegalAccessException e) {
+            return false;
+        }
+        return true;
+    }
+
+    void beginTransaction(SQLiteDatabase db, boolean exclusive) {
+        if (exclusive) {
+            db.beginTransaction();
+        } else {
+            db.beginTransactionNonExclusive();
+        }
+        exclusiveTransaction.set(exclusive);
+    }
+
+    void endTransaction(SQLiteDatabase db, boolean successful) {
+        boolean committed = false;
+        try {
+            db.endTransaction();
+            committed = successful;
+        } finally {
+            exclusiveTransaction.remove();
+            changeTracker.end(committed);
+        }
+    }
+
+    void transactionInSavepoint(@NonNull TransactionTask task) {
+        Exception exception = executeInSavepoint(task);
+        if (exception != null) {
+            task.onError(exception);
+        }
+    }
+
+    /**
+     * Runs {@link TransactionTask#execute()} in a {@code SAVEPOINT} of the transaction in progress, which is released
+     * on success and rolled back on failure. {@link TransactionTask#onError(Exception)} is not called.
+     *
+     * @param task A task to run
+     * @return The exception thrown by {@code task}, or {@code null} on success
+     * @throws IllegalStateException if no transaction is in progress in the current thread
+     */
+    @Nullable
+    public Exception executeInSavepoint(@NonNull TransactionTask task) {
+        SQLiteDatabase db = getWritableDatabase();
+        if (!db.inTransaction()) {
+            throw new IllegalStateException("No transaction is in progress");
+        }
+
+        // savepoints are strictly nested, so they can share the name
+        execSQL(db, "SAVEPOINT " + SAVEPOINT);
+        changeTracker.begin();
+
+        boolean successful = false;
+        try {
+            task.execute();
+            successful = true;
+            return null;
+        } catch (Exception e) {
+            // "ROLLBACK" is a special statement for SQLiteSession, so it is prefixed by a comment
+            execSQL(db, "/* " + SAVEPOINT + " */ ROLLBACK TO " + SAVEPOINT);
+            return e;
+        } finally {
+            changeTracker.end(successful);
+            execSQL(db, "RELEASE " + SAVEPOINT);
+        }
+    }
+
+    /**
+     * Queues {@code task} to the writer. It may be committed together with other async tasks.
+     *
+     * @param task A task to run in a transaction
+     * @see GroupCommitExecutor
+     */
+    public void transactionAsync(@NonNull TransactionTask task) {
+        groupCommitExecutor.execute(task, true);
+    }
+
+    /**
+     * Queues {@code task} to the writer with a priority. Interactive tasks run before background tasks queued earlier,
+     * and a long background task can let them in by {@link #yieldIfContended()}.
+     *
+     * @param priority The priority of the task
+     * @param task     A task to run in a transaction
+     * @see WritePriority
+     */
+    public void transactionAsync(@NonNull WritePriority priority, @NonNull TransactionTask task) {
+        groupCommitExecutor.execute(task, true, priority);
+    }
+
+    /**
+     * Commits the transaction in progress and begins a new one if other writes are waiting for it: interactive tasks
+     * queued by {@link #transactionAsync(WritePriority, TransactionTask)} run in the meantime when it is called
+     * in a background task, and other threads waiting for the database get it by
+     * {@link SQLiteDatabase#yieldIfContendedSafely()}.
+     *
+     * Call it between units of work of a long transaction, so that the work is committed in chunks.
+     * The new transaction is exclusive or non-exclusive as the one yielded.
+     * The changes committed before yielding are not rolled back even if the transaction fails later.
+     * It does nothing in a nested transaction, because a transaction with {@code SAVEPOINT}s can't be committed
+     * in part.
+     *
+     * @return {@code true} if the transaction is yielded
+     */
+    @WorkerThread
+    public boolean yieldIfContended() {
+        SQLiteDatabase db = getWritableDatabase();
+        if (!db.inTransaction() || changeTracker.depth() != 1) {
+            return false;
+        }
+
+        if (groupCommitExecutor.hasPendingInteractiveTasks()) {
+            // resumes in the same mode as the transaction began, e.g. by transactionNonExclusiveSync()
+            boolean exclusive = !Boolean.FALSE.equals(exclusiveTransaction.get());
+            trace("yield transaction", null);
+            db.setTransactionSuccessful();
+            endTransaction(db, true);
+            try {
+                groupCommitExecutor.runPendingInteractiveTasks();
+            } finally {
+                trace(exclusive ? "resume transaction" : "resume transaction (non exclusive)", null);
+                beginTransaction(db, exclusive);
+                changeTracker.begin();
+            }
+            return true;
+        }
+
+        if (db.yieldIfContendedSafely()) {
+            // the changes before yielding are committed
+            changeTracker.end(true);
+            changeTracker.begin();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The executor for reading in background
+     */
+    @NonNull
+    public Executor getReaderExecutor() {
+        return readerExecutor;
+    }
+
+    /**
+     * @return The serial executor for writing in background
+     */
+    @NonNull
+    public WriterExecutor getWriterExecutor() {
+        return writerExecutor;
+    }
+
+    /**
+     * @return The scheduler that {@code *AsObservable()} methods for reading subscribe on. In a transaction, they run
+     * in the calling thread so that they see the transaction.
+     */
+    @NonNull
+    public Scheduler getReaderScheduler() {
+        return readerScheduler;
+    }
+
+    /**
+     * @return The scheduler that {@code *AsObservable()} methods for writing subscribe on. Writes on it are
+     * serialized with {@link #transactionAsync(TransactionTask)}. In a transaction, they run in the calling thread,
+     * which holds the write lock.
+     */
+    @NonNull
+    public Scheduler getWriterScheduler() {
+        return writerScheduler;
+    }
+
+    /**
+     * @return The writer for {@link #transactionAsync(TransactionTask)}, which also provides the statistics of group
+     * commit
+     */
+    @NonNull
+    public GroupCommitExecutor getGroupCommitExecutor() {
+        return groupCommitExecutor;
     }
 
     /**
@@ -305,12 +1270,118 @@ public class OrmaConnection extends SQLiteOpenHelper {
             db.endTransaction();
             db.close();
         }
+
+        List<String> tableNames = new ArrayList<>(schemas.size());
+        for (Schema<?> schema : schemas) {
+            tableNames.add(schema.getTableName());
+        }
+        notifyChanged(tableNames);
     }
 
+    /**
+     * Executes an SQL statement. {@code INSERT}, {@code UPDATE}, {@code REPLACE}, and {@code DELETE} statements are
+     * compiled via {@link StatementCache}.
+     *
+     * @param sql      An SQL statement
+     * @param bindArgs Arguments bound to the statement
+     */
     public void execSQL(@NonNull String sql, @NonNull Object... bindArgs) {
         trace(sql, bindArgs);
         SQLiteDatabase db = getWritableDatabase();
-        db.execSQL(sql, bindArgs);
+        if (DatabaseUtils.getSqlStatementType(sql) == DatabaseUtils.STATEMENT_UPDATE) {
+            SQLiteStatement statement = acquireStatement(db, sql);
+            try {
+                bindArgs(statement, bindArgs);
+                statement.executeUpdateDelete();
+            } finally {
+                releaseStatement(statement);
+            }
+            notifyChanged(findTableNames(sql));
+        } else {
+            db.execSQL(sql, bindArgs);
+        }
+    }
+
+    /**
+     * @return The names of the tables that {@code sql} refers to. It may include tables that are only read.
+     */
+    @NonNull
+    List<String> findTableNames(@NonNull String sql) {
+        List<String> tableNames = new ArrayList<>();
+        for (int i = 0; i < schemas.size(); i++) {
+            if (tableNamePatterns.get(i).matcher(sql).find()) {
+                tableNames.add(schemas.get(i).getTableName());
+            }
+        }
+        return tableNames;
+    }
+
+    /**
+     * Records a change on the table of {@code schema}. It is published on the commit of the transaction in progress,
+     * or immediately if no transaction is in progress.
+     *
+     * @param schema The schema of a modified table
+     * @see #observeTableChanges()
+     */
+    public void notifyChanged(@NonNull Schema<?> schema) {
+        changeTracker.changed(schema.getTableName());
+    }
+
+    /**
+     * Records rows inserted into the table of {@code schema}.
+     *
+     * @param schema The schema of a modified table
+     * @param keys   The primary keys of the rows
+     */
+    void notifyInserted(@NonNull Schema<?> schema, @NonNull Collection<?> keys) {
+        changeTracker.inserted(schema.getTableName(), keys);
+    }
+
+    /**
+     * Records changes on tables.
+     *
+     * @param tableNames The names of modified tables
+     * @see #notifyChanged(Schema)
+     */
+    public void notifyChanged(@NonNull Collection<String> tableNames) {
+        if (!tableNames.isEmpty()) {
+            changeTracker.changed(tableNames);
+        }
+    }
+
+    /**
+     * Changes made by {@link Inserter}, {@link Updater}, {@link Deleter} and {@link #execSQL(String, Object...)}
+     * are published per commit. Changes in a transaction are coalesced, and changes rolled back are not published.
+     *
+     * @return An {@link Observable} that yields the set of modified table names for each commit
+     */
+    @NonNull
+    public Observable<Set<String>> observeTableChanges() {
+        return changeTracker.observe().map(new Func1<ChangeSet, Set<String>>() {
+            @Override
+            public Set<String> call(ChangeSet changes) {
+                return changes.getTableNames();
+            }
+        });
+    }
+
+    /**
+     * Publishes the same commits as {@link #observeTableChanges()} with the primary keys of the rows inserted, updated,
+     * and deleted, if {@link OrmaConfiguration#rowChangeFeed(boolean)} is enabled. Otherwise, all the changes are
+     * reported without rows.
+     *
+     * @return An {@link Observable} that yields a {@link ChangeSet} for each commit
+     */
+    @NonNull
+    public Observable<ChangeSet> observeRowChanges() {
+        return changeTracker.observe();
+    }
+
+    /**
+     * @return {@code true} if {@link ChangeSet}s have the primary keys of modified rows
+     */
+    public boolean isRowChangeFeedEnabled() {
+        return rowChangeFeed;
     }
 
     void dropAllTables(SQLiteDatabase db) {
@@ -371,6 +1442,7 @@ public class OrmaConnection extends SQLiteOpenHelper {
 
     @Override
     public void onOpen(SQLiteDatabase db) {
+        openedDatabase = db;
         long t0 = System.currentTimeMillis();
         if (trace) {
             Log.i(TAG, "migration started");
@@ -17,7 +17,9 @@ package com.github.gfx.android.orma;
 
 import com.github.gfx.android.orma.annotation.OnConflict;
 import com.github.gfx.android.orma.annotation.PrimaryKey;
+import com.github.gfx.android.orma.exception.NoValueException;
 import com.github.gfx.android.orma.internal.OrmaConditionBase;
+import com.github.gfx.android.orma.internal.OrmaIterator;
 
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.support.annotation.IntRange;
@@ -25,7 +27,10 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import rx.Observable;
 import rx.Single;
@@ -82,9 +87,69 @@ public abstract class Relation<Model, R extends Relation<Model, ?>> extends Orma
         return selector().isEmpty();
     }
 
+    public boolean exists() {
+        return selector().exists();
+    }
+
+    /**
+     * Finds the primary keys which are already present in the relation. It runs a {@code SELECT ... IN (...)} query
+     * for each chunk of {@code ids}, so it is suitable to deduplicate a large number of models.
+     * The primary key must be an {@code INTEGER} column.
+     *
+     * @param ids Primary keys to check
+     * @return The subset of {@code ids} which exist
+     */
+    @NonNull
+    public Set<Long> existingIds(@NonNull Collection<Long> ids) {
+        Set<Long> existingIds = new HashSet<>();
+        if (ids.isEmpty()) {
+            return existingIds;
+        }
+
+        ColumnDef<Model, ?> primaryKey = schema.getPrimaryKey();
+        List<Long> idList = new ArrayList<>(ids);
+        int chunkSize = Inserter.MAX_BIND_ARGS - (bindArgs != null ? bindArgs.size() : 0);
+        for (int i = 0; i < idList.size(); i += chunkSize) {
+            List<Long> chunk = idList.subList(i, Math.min(i + chunkSize, idList.size()));
+
+            StringBuilder clause = new StringBuilder();
+            clause.append(primaryKey.getEscapedName());
+            clause.append(" IN (");
+            for (int j = 0; j < chunk.size(); j++) {
+                if (j != 0) {
+                    clause.append(", ");
+                }
+                clause.append('?');
+            }
+            clause.append(')');
+
+            for (long id : selector().where(clause, chunk).pluckLong(primaryKey)) {
+                existingIds.add(id);
+            }
+        }
+        return existingIds;
+    }
+
+    /**
+     * Finds the item at {@code position}. If the entity cache of the model is enabled, only the primary key is
+     * queried and the item is looked up in the cache.
+     *
+     * @param position The position of the item
+     * @return The item
+     * @throws NoValueException if there is no item at {@code position}
+     */
     @NonNull
     public Model get(@IntRange(from = 0) int position) {
-        return selector().get(position);
+        if (conn.entityCacheFor(schema) == null) {
+            return selector().get(position);
+        }
+        Object primaryKey = selector().getPrimaryKeyOrNull(position);
+        Model model = primaryKey != null ? conn.querySingleByPrimaryKey(schema, primaryKey) : null;
+        if (model == null) {
+            throw new NoValueException("Expected single value for " + position + " but nothing for "
+                    + schema.getTableName());
+        }
+        return model;
     }
 
 
@@ -105,7 +170,7 @@ public abstract class Relation<Model, R extends Relation<Model, ?>> extends Orma
             public void call(final SingleSubscriber<? super Model> subscriber) {
                 subscriber.onSuccess(get(position));
             }
-        });
+        }).subscribeOn(conn.getReaderScheduler());
     }
 
     /**
@@ -162,7 +227,7 @@ public abstract class Relation<Model, R extends Relation<Model, ?>> extends Orma
                     }
                 });
             }
-        });
+        }).subscribeOn(conn.getWriterScheduler());
     }
 
     /**
@@ -183,7 +248,7 @@ public abstract class Relation<Model, R extends Relation<Model, ?>> extends Orma
                 int deletedRows = conn.delete(schema, schema.getPrimaryKey() + " IN (" + select + ")", getBindArgs());
                 subscriber.onSuccess(deletedRows);
             }
-        });
+        }).subscribeOn(conn.getWriterScheduler());
     }
 
     /**
@@ -200,7 +265,7 @@ public abstract class Relation<Model, R extends Relation<Model, ?>> extends Orma
                 long rowId = inserter().execute(factory);
                 subscriber.onSuccess(rowId);
             }
-        });
+        }).subscribeOn(conn.getWriterScheduler());
     }
 
     @Override
@@ -249,8 +314,9 @@ public abstract class Relation<Model, R extends Relation<Model, ?>> extends Orma
 
     // Iterator<Model>
 
+    @NonNull
     @Override
-    public Iterator<Model> iterator() {
+    public OrmaIterator<Model> iterator() {
         return selector().iterator();
     }
 }
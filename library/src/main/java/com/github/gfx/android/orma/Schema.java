@@ -35,9 +35,21 @@ public interface Schema<Model> extends MigrationSchema {
     @NonNull
     String getEscapedTableName();
 
+    /**
+     * The FROM clause of SELECT, which is the escaped table name followed by {@code LEFT OUTER JOIN}s of the tables of
+     * direct associations. The joined columns are aliased as {@code "association.column"}.
+     *
+     * @return The FROM clause to select models with their direct associations
+     */
+    @NonNull
+    String getSelectFromTableClause();
+
     @NonNull
     ColumnDef<Model, ?> getPrimaryKey();
 
+    /**
+     * @return The escaped names of {@link #getColumns()}, followed by the aliased columns of direct associations
+     */
     @NonNull
     String[] getEscapedColumnNames();
 
@@ -63,4 +75,28 @@ public interface Schema<Model> extends MigrationSchema {
 
     @NonNull
     Model newModelFromCursor(@NonNull OrmaConnection conn, @NonNull Cursor cursor);
+
+    /**
+     * Creates a model from the columns of {@link #getEscapedColumnNames()} that start at {@code offset} in the cursor,
+     * which is used to hydrate a model joined as a direct association.
+     *
+     * @param conn   A connection
+     * @param cursor A cursor that has all the columns at {@code offset}
+     * @param offset The cursor position of the first column
+     * @return A model
+     */
+    @NonNull
+    Model newModelFromCursor(@NonNull OrmaConnection conn, @NonNull Cursor cursor, int offset);
+
+    /**
+     * Creates a partial model that has only the columns in the cursor.
+     *
+     * @param conn      A connection
+     * @param cursor    A cursor that has some of the columns
+     * @param positions The cursor positions for each column in {@link #getColumns()}, or {@code -1} if the column
+     *                  is not in the cursor, in which case the field is left as the default value of its type.
+     * @return A partial model
+     */
+    @NonNull
+    Model newModelFromCursor(@NonNull OrmaConnection conn, @NonNull Cursor cursor, @NonNull int[] positions);
 }
@@ -18,26 +18,46 @@ package com.github.gfx.android.orma;
 
 import com.github.gfx.android.orma.exception.InvalidStatementException;
 import com.github.gfx.android.orma.exception.NoValueException;
+import com.github.gfx.android.orma.internal.CancellationSignals;
 import com.github.gfx.android.orma.internal.OrmaConditionBase;
 import com.github.gfx.android.orma.internal.OrmaIterator;
+import com.github.gfx.android.orma.internal.OrmaIteratorOnSubscribe;
+import com.github.gfx.android.orma.internal.QueryCache;
 
+import android.annotation.TargetApi;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.os.Build;
+import android.os.CancellationSignal;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import rx.Observable;
 import rx.Subscriber;
+import rx.functions.Action0;
 import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
 import rx.functions.FuncN;
 
 public abstract class Selector<Model, S extends Selector<Model, ?>>
         extends OrmaConditionBase<Model, S> implements Iterable<Model>, Cloneable {
 
+    /**
+     * The default debounce time of {@link #observe()}, which is about a frame.
+     */
+    public static final long OBSERVE_DEBOUNCE_MILLIS = 16;
+
     @Nullable
     protected String groupBy;
 
@@ -47,12 +67,37 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
     @Nullable
     protected String orderBy;
 
+    @Nullable
+    protected ArrayList<OrderSpec<Model>> orderSpecs;
+
+    protected boolean orderedByRawTerms = false;
+
     protected long limit = -1;
 
     protected long offset = -1;
 
     protected long page = -1;
 
+    @Nullable
+    protected ArrayList<ColumnDef<Model, ?>> projection;
+
+    @Nullable
+    private int[] projectionPositions;
+
+    protected long cursorWindowSize = -1;
+
+    @Nullable
+    protected Boolean prefetch;
+
+    @Nullable
+    protected CancellationSignal cancellationSignal;
+
+    @Nullable
+    protected Boolean cache;
+
+    @Nullable
+    protected ArrayList<ColumnDef<Model, ? extends SingleAssociation<?>>> prefetchedAssociations;
+
     public Selector(@NonNull OrmaConnection conn, @NonNull Schema<Model> schema) {
         super(conn, schema);
     }
@@ -62,9 +107,35 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
         if (condition instanceof Relation) {
             @SuppressWarnings("unchecked")
             Relation<Model, ?> relation = (Relation<Model, ?>) condition;
-            CharSequence orderByTerm = relation.buildOrderingTerms();
-            if (orderByTerm != null) {
-                orderBy(orderByTerm);
+            for (OrderSpec<Model> orderSpec : relation.orderSpecs) {
+                orderBy(orderSpec);
+            }
+        } else if (condition instanceof Selector) {
+            @SuppressWarnings("unchecked")
+            Selector<Model, ?> selector = (Selector<Model, ?>) condition;
+            if (selector.whereClause == null && selector.bindArgs != null) {
+                // bind args only for HAVING
+                appendBindArgs(selector.bindArgs.toArray());
+            }
+            groupBy = selector.groupBy;
+            having = selector.having;
+            orderBy = selector.orderBy;
+            if (selector.orderSpecs != null) {
+                orderSpecs = new ArrayList<>(selector.orderSpecs);
+            }
+            orderedByRawTerms = selector.orderedByRawTerms;
+            limit = selector.limit;
+            offset = selector.offset;
+            page = selector.page;
+            if (selector.projection != null) {
+                projection = new ArrayList<>(selector.projection);
+            }
+            cursorWindowSize = selector.cursorWindowSize;
+            prefetch = selector.prefetch;
+            cancellationSignal = selector.cancellationSignal;
+            cache = selector.cache;
+            if (selector.prefetchedAssociations != null) {
+                prefetchedAssociations = new ArrayList<>(selector.prefetchedAssociations);
             }
         }
     }
@@ -72,6 +143,61 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
     @Override
     public abstract S clone();
 
+    /**
+     * Selects only {@code columns}, so that models are hydrated partially. The fields of the columns not selected
+     * are left as the default values of their types, e.g. {@code null} or {@code 0}.
+     *
+     * <p>Use it to avoid reading large columns which you don't need, e.g. in list screens.
+     * Do not pass partial models to {@code Updater} or {@code Inserter}.</p>
+     *
+     * @param columns Columns to select, e.g. {@code Todo_Schema.title}
+     * @return the receiver itself
+     */
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    public final S select(@NonNull ColumnDef<Model, ?>... columns) {
+        List<ColumnDef<Model, ?>> schemaColumns = schema.getColumns();
+        ArrayList<ColumnDef<Model, ?>> projection = new ArrayList<>(columns.length);
+        for (ColumnDef<Model, ?> column : columns) {
+            if (!schemaColumns.contains(column)) {
+                throw new IllegalArgumentException("No such column in " + schema.getTableName() + ": " + column);
+            }
+            projection.add(column);
+        }
+        this.projection = projection;
+        this.projectionPositions = null;
+        return (S) this;
+    }
+
+    /**
+     * @return The escaped names of the selected columns, or all the columns if {@link #select(ColumnDef[])} is not
+     * called.
+     */
+    @NonNull
+    public String[] getEscapedColumnNames() {
+        if (projection == null) {
+            return schema.getEscapedColumnNames();
+        }
+        String[] names = new String[projection.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = projection.get(i).getEscapedName().toString();
+        }
+        return names;
+    }
+
+    private int[] getProjectionPositions() {
+        if (projectionPositions == null) {
+            List<ColumnDef<Model, ?>> schemaColumns = schema.getColumns();
+            int[] positions = new int[schemaColumns.size()];
+            Arrays.fill(positions, -1);
+            for (int i = 0; i < projection.size(); i++) {
+                positions[schemaColumns.indexOf(projection.get(i))] = i;
+            }
+            projectionPositions = positions;
+        }
+        return projectionPositions;
+    }
+
     @SuppressWarnings("unchecked")
     public S groupBy(@NonNull String groupBy) {
         this.groupBy = groupBy;
@@ -85,8 +211,21 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
         return (S) this;
     }
 
-    @SuppressWarnings("unchecked")
     public S orderBy(@NonNull CharSequence orderByTerm) {
+        orderedByRawTerms = true;
+        return appendOrderingTerm(orderByTerm);
+    }
+
+    public S orderBy(@NonNull OrderSpec<Model> orderSpec) {
+        if (orderSpecs == null) {
+            orderSpecs = new ArrayList<>();
+        }
+        orderSpecs.add(orderSpec);
+        return appendOrderingTerm(orderSpec.toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private S appendOrderingTerm(@NonNull CharSequence orderByTerm) {
         if (orderBy == null) {
             orderBy = orderByTerm.toString();
         } else {
@@ -95,6 +234,23 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
         return (S) this;
     }
 
+    @Nullable
+    public String getOrderingTerms() {
+        return orderBy;
+    }
+
+    /**
+     * @return {@link OrderSpec}s for keyset pagination, which is an empty list if no ordering is specified,
+     * or {@code null} if the selector is ordered by raw terms or has any of limit, offset, GROUP BY or HAVING.
+     */
+    @Nullable
+    public List<OrderSpec<Model>> getSeekableOrderSpecs() {
+        if (orderedByRawTerms || groupBy != null || having != null || getLimitClause() != null) {
+            return null;
+        }
+        return orderSpecs != null ? orderSpecs : Collections.<OrderSpec<Model>>emptyList();
+    }
+
     @SuppressWarnings("unchecked")
     public S limit(@IntRange(from = 1, to = Integer.MAX_VALUE) long limit) {
         this.limit = limit;
@@ -119,8 +275,92 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
         return (S) this;
     }
 
+    /**
+     * Sets the size of {@link android.database.CursorWindow} for this selector, which overrides
+     * {@link OrmaConfiguration#cursorWindowSize(long)}. Large windows reduce window fills for wide rows
+     * and small windows save memory for narrow rows. A custom size is honored only on Android 9.0 or later.
+     *
+     * @param cursorWindowSize The size of cursor windows in bytes, or {@code 0} for the platform default
+     * @return the receiver itself
+     */
+    @SuppressWarnings("unchecked")
+    public S cursorWindowSize(@IntRange(from = 0) long cursorWindowSize) {
+        this.cursorWindowSize = cursorWindowSize;
+        return (S) this;
+    }
+
+    /**
+     * Sets the prefetch hint for this selector, which overrides {@link OrmaConfiguration#cursorPrefetch(boolean)}.
+     *
+     * @param prefetch {@code true} to fill the first cursor window when the query is executed
+     * @return the receiver itself
+     */
+    @SuppressWarnings("unchecked")
+    public S prefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+        return (S) this;
+    }
+
+    /**
+     * Sets a signal to cancel the queries of this selector, e.g. a stale query of search-as-you-type.
+     * A canceled query throws {@link android.os.OperationCanceledException}. It is ignored before Android 4.1.
+     *
+     * @param cancellationSignal A signal to cancel the queries, or {@code null}
+     * @return the receiver itself
+     */
+    @SuppressWarnings("unchecked")
+    public S cancellationSignal(@Nullable CancellationSignal cancellationSignal) {
+        this.cancellationSignal = cancellationSignal;
+        return (S) this;
+    }
+
+    /**
+     * Opts in or out of the query cache for {@link #count()} and {@link #toList()}, which overrides the default of
+     * {@link OrmaConfiguration#queryCache(int, boolean)}. It does nothing if the query cache is not enabled.
+     *
+     * @param cache {@code true} to cache the results
+     * @return the receiver itself
+     */
+    @SuppressWarnings("unchecked")
+    public S cache(boolean cache) {
+        this.cache = cache;
+        return (S) this;
+    }
+
+    /**
+     * Prefetches the models of {@code association} in {@link #toList()}: after the query, the models are loaded by
+     * chunked {@code SELECT ... IN (...)} queries for the distinct ids, so that the associations of the result are
+     * resolved without a query for each, i.e. the N+1 queries problem.
+     * {@link #toList()} with prefetched associations doesn't use the query cache.
+     *
+     * @param association A {@link SingleAssociation} column, e.g. {@code Book_Schema.publisher}
+     * @return the receiver itself
+     * @see SingleAssociation#prefetch(OrmaConnection, Collection)
+     */
+    @SuppressWarnings("unchecked")
+    public S with(@NonNull ColumnDef<Model, ? extends SingleAssociation<?>> association) {
+        if (prefetchedAssociations == null) {
+            prefetchedAssociations = new ArrayList<>();
+        }
+        prefetchedAssociations.add(association);
+        return (S) this;
+    }
+
     @Nullable
-    private String getLimitClause() {
+    public CancellationSignal getCancellationSignal() {
+        return cancellationSignal;
+    }
+
+    public long getCursorWindowSize() {
+        return cursorWindowSize != -1 ? cursorWindowSize : conn.getCursorWindowSize();
+    }
+
+    public boolean getPrefetch() {
+        return prefetch != null ? prefetch : conn.getCursorPrefetch();
+    }
+
+    @Nullable
+    public String getLimitClause() {
         if (page != -1 && offset != -1) {
             throw new InvalidStatementException("page() and offset() are exclusive. Use either.");
         }
@@ -144,7 +384,21 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
 
     @IntRange(from = 0)
     public int count() {
-        return conn.count(schema, getWhereClause(), getBindArgs());
+        QueryCache queryCache = conn.queryCacheFor(cache);
+        if (queryCache == null) {
+            return conn.count(schema, getWhereClause(), getBindArgs());
+        }
+
+        String sql = SQLiteQueryBuilder.buildQueryString(false, schema.getSelectFromTableClause(),
+                OrmaConnection.countSelections, getWhereClause(), null, null, null, null);
+        Object[] bindArgs = getBindArgs();
+        Integer count = queryCache.get(sql, bindArgs);
+        if (count == null) {
+            long generation = queryCache.generation();
+            count = (int) conn.rawQueryForLong(sql, bindArgs);
+            queryCache.put(sql, bindArgs, conn.findTableNames(sql), count, 1, generation);
+        }
+        return count;
     }
 
     /**
@@ -160,11 +414,24 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
                 subscriber.onNext(count());
                 subscriber.onCompleted();
             }
-        });
+        }).subscribeOn(conn.getReaderScheduler());
+    }
+
+    /**
+     * Checks if any row matches with {@code SELECT EXISTS(SELECT 1 ... LIMIT 1)}, which stops at the first row
+     * unlike {@link #count()}.
+     *
+     * @return {@code true} if any row matches
+     */
+    public boolean exists() {
+        String limit = getLimitClause();
+        String subquery = SQLiteQueryBuilder.buildQueryString(false, schema.getSelectFromTableClause(),
+                new String[]{"1"}, getWhereClause(), groupBy, having, null, limit != null ? limit : "1");
+        return conn.rawQueryForLong("SELECT EXISTS(" + subquery + ")", getBindArgs()) != 0;
     }
 
     public boolean isEmpty() {
-        return count() == 0;
+        return !exists();
     }
 
     @Deprecated // TODO: remove it in v2.0
@@ -188,8 +455,34 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
 
     @Nullable
     public Model getOrNull(@IntRange(from = 0) long position) {
-        return conn.querySingle(schema, schema.getEscapedColumnNames(),
-                getWhereClause(), getBindArgs(), groupBy, having, orderBy, position);
+        Cursor cursor = conn.query(schema, getEscapedColumnNames(),
+                getWhereClause(), getBindArgs(), groupBy, having, orderBy, position + ",1",
+                getCursorWindowSize(), getPrefetch(), cancellationSignal);
+        try {
+            if (cursor.moveToFirst()) {
+                return newModelFromCursor(cursor);
+            } else {
+                return null;
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return The primary key of the row at {@code position}, or {@code null} if there is no row or the primary key
+     * is {@code NULL} or {@code BLOB}
+     */
+    @Nullable
+    Object getPrimaryKeyOrNull(@IntRange(from = 0) long position) {
+        Cursor cursor = conn.query(schema, new String[]{schema.getPrimaryKey().getEscapedName().toString()},
+                getWhereClause(), getBindArgs(), groupBy, having, orderBy, position + ",1",
+                getCursorWindowSize(), getPrefetch(), cancellationSignal);
+        try {
+            return cursor.moveToFirst() ? OrmaConnection.readPrimaryKey(cursor, 0) : null;
+        } finally {
+            cursor.close();
+        }
     }
 
     @NonNull
@@ -203,14 +496,16 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
 
     @NonNull
     public Cursor execute() {
-        return conn.query(schema, schema.getEscapedColumnNames(),
-                getWhereClause(), getBindArgs(), groupBy, having, orderBy, getLimitClause());
+        return conn.query(schema, getEscapedColumnNames(),
+                getWhereClause(), getBindArgs(), groupBy, having, orderBy, getLimitClause(),
+                getCursorWindowSize(), getPrefetch(), cancellationSignal);
     }
 
     @NonNull
     public Cursor executeWithColumns(@NonNull String... columns) {
         return conn.query(schema, columns,
-                getWhereClause(), getBindArgs(), groupBy, having, orderBy, getLimitClause());
+                getWhereClause(), getBindArgs(), groupBy, having, orderBy, getLimitClause(),
+                getCursorWindowSize(), getPrefetch(), cancellationSignal);
     }
 
     /**
@@ -220,6 +515,28 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
      */
     @NonNull
     public List<Model> toList() {
+        // prefetched models are set to the associations, which must not be shared with the cached models
+        QueryCache queryCache = prefetchedAssociations == null ? conn.queryCacheFor(cache) : null;
+        if (queryCache == null) {
+            List<Model> list = executeToList();
+            prefetchAssociations(list);
+            return list;
+        }
+
+        String sql = SQLiteQueryBuilder.buildQueryString(false, schema.getSelectFromTableClause(),
+                getEscapedColumnNames(), getWhereClause(), groupBy, having, orderBy, getLimitClause());
+        Object[] bindArgs = getBindArgs();
+        List<Model> list = queryCache.get(sql, bindArgs);
+        if (list == null) {
+            long generation = queryCache.generation();
+            list = executeToList();
+            queryCache.put(sql, bindArgs, conn.findTableNames(sql), list, list.size() + 1, generation);
+        }
+        // the cached list is never exposed
+        return new ArrayList<>(list);
+    }
+
+    List<Model> executeToList() {
         final ArrayList<Model> list = new ArrayList<>();
         forEach(new Action1<Model>() {
             @Override
@@ -230,6 +547,19 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
         return list;
     }
 
+    void prefetchAssociations(List<Model> list) {
+        if (prefetchedAssociations == null || list.isEmpty()) {
+            return;
+        }
+        for (ColumnDef<Model, ? extends SingleAssociation<?>> column : prefetchedAssociations) {
+            List<SingleAssociation<?>> associations = new ArrayList<>(list.size());
+            for (Model model : list) {
+                associations.add(column.get(model));
+            }
+            SingleAssociation.prefetch(conn, associations);
+        }
+    }
+
     /**
      * Executes a query and calls {@code Action1<Model>#call} for each model}.
      *
@@ -243,35 +573,286 @@ public abstract class Selector<Model, S extends Selector<Model, ?>>
         cursor.close();
     }
 
+    /**
+     * Reads a column as {@code long} values without creating models. {@code NULL} is read as {@code 0}.
+     *
+     * @param column A column to read
+     * @return The values of the column
+     */
+    @NonNull
+    protected long[] pluckLong(@NonNull ColumnDef<Model, ?> column) {
+        Cursor cursor = executeWithColumns(column.getEscapedName().toString());
+        try {
+            long[] values = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToPosition(i); i++) {
+                values[i] = cursor.getLong(0);
+            }
+            return values;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Reads a column as {@code double} values without creating models. {@code NULL} is read as {@code 0.0}.
+     *
+     * @param column A column to read
+     * @return The values of the column
+     */
+    @NonNull
+    protected double[] pluckDouble(@NonNull ColumnDef<Model, ?> column) {
+        Cursor cursor = executeWithColumns(column.getEscapedName().toString());
+        try {
+            double[] values = new double[cursor.getCount()];
+            for (int i = 0; cursor.moveToPosition(i); i++) {
+                values[i] = cursor.getDouble(0);
+            }
+            return values;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Reads a column as {@code String} values without creating models.
+     *
+     * @param column A column to read
+     * @return The values of the column
+     */
+    @NonNull
+    protected String[] pluckString(@NonNull ColumnDef<Model, ?> column) {
+        Cursor cursor = executeWithColumns(column.getEscapedName().toString());
+        try {
+            String[] values = new String[cursor.getCount()];
+            for (int i = 0; cursor.moveToPosition(i); i++) {
+                values[i] = cursor.getString(0);
+            }
+            return values;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Calls {@code consumer} for each value of a column without boxing. {@code NULL} is read as {@code 0}.
+     *
+     * @param column   A column to read
+     * @param consumer A callback called for each value
+     */
+    protected void forEachLong(@NonNull ColumnDef<Model, ?> column, @NonNull LongConsumer consumer) {
+        Cursor cursor = executeWithColumns(column.getEscapedName().toString());
+        try {
+            while (cursor.moveToNext()) {
+                consumer.accept(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @NonNull
+    private String buildAggregateQuery(@NonNull String function, @NonNull ColumnDef<Model, ?> column) {
+        String columnName = column.getEscapedName().toString();
+        String limit = getLimitClause();
+        if (groupBy == null && having == null && limit == null) {
+            return SQLiteQueryBuilder.buildQueryString(false, schema.getSelectFromTableClause(),
+                    new String[]{function + "(" + columnName + ")"}, getWhereClause(), null, null, null, null);
+        } else {
+            // aggregates the rows that execute() returns, i.e. a row for each group with GROUP BY, whose value is
+            // that of an arbitrary row in the group unless the column is grouped. The column is aliased because
+            // a qualified name, e.g. of _rowid_, is not visible outside of the subquery.
+            String subquery = SQLiteQueryBuilder.buildQueryString(false, schema.getSelectFromTableClause(),
+                    new String[]{columnName + " AS v"}, getWhereClause(), groupBy, having, orderBy, limit);
+            return "SELECT " + function + "(v) FROM (" + subquery + ")";
+        }
+    }
+
+    /**
+     * Runs an aggregate function, e.g. {@code MIN}, over a column in SQLite. With {@code groupBy()}, it aggregates
+     * a value for each group, which is taken from an arbitrary row of the group unless the column is grouped.
+     *
+     * @param function An aggregate function
+     * @param column   A column to aggregate
+     * @return The result, or {@code null} if it is {@code NULL}, e.g. for no rows
+     */
+    @Nullable
+    protected Long aggregateAsLong(@NonNull String function, @NonNull ColumnDef<Model, ?> column) {
+        Cursor cursor = conn.rawQuery(buildAggregateQuery(function, column), getBindArgs());
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Runs an aggregate function, e.g. {@code AVG}, over a column in SQLite. With {@code groupBy()}, it aggregates
+     * a value for each group, which is taken from an arbitrary row of the group unless the column is grouped.
+     *
+     * @param function An aggregate function
+     * @param column   A column to aggregate
+     * @return The result, or {@code null} if it is {@code NULL}, e.g. for no rows
+     */
+    @Nullable
+    protected Double aggregateAsDouble(@NonNull String function, @NonNull ColumnDef<Model, ?> column) {
+        Cursor cursor = conn.rawQuery(buildAggregateQuery(function, column), getBindArgs());
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getDouble(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Runs an aggregate function, e.g. {@code MAX}, over a column in SQLite. With {@code groupBy()}, it aggregates
+     * a value for each group, which is taken from an arbitrary row of the group unless the column is grouped.
+     *
+     * @param function An aggregate function
+     * @param column   A column to aggregate
+     * @return The result, or {@code null} if it is {@code NULL}, e.g. for no rows
+     */
+    @Nullable
+    protected String aggregateAsString(@NonNull String function, @NonNull ColumnDef<Model, ?> column) {
+        Cursor cursor = conn.rawQuery(buildAggregateQuery(function, column), getBindArgs());
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @param column An integer column
+     * @return The sum of the column, or {@code 0} for no rows
+     */
+    protected long sumAsLong(@NonNull ColumnDef<Model, ?> column) {
+        return conn.rawQueryForLong(buildAggregateQuery("SUM", column), getBindArgs());
+    }
+
+    /**
+     * @param column A real column
+     * @return The sum of the column, or {@code 0.0} for no rows
+     */
+    protected double sumAsDouble(@NonNull ColumnDef<Model, ?> column) {
+        Double sum = aggregateAsDouble("TOTAL", column);
+        return sum != null ? sum : 0.0;
+    }
+
     @NonNull
     public Model newModelFromCursor(@NonNull Cursor cursor) {
-        return schema.newModelFromCursor(conn, cursor);
+        if (projection != null) {
+            return schema.newModelFromCursor(conn, cursor, getProjectionPositions());
+        }
+        return conn.newModelFromCursor(schema, cursor);
     }
 
+    /**
+     * Streams models as requested by the subscriber, so a slow consumer doesn't buffer the whole result in memory.
+     * The cursor is closed as soon as the subscriber unsubscribes.
+     *
+     * @return An {@link Observable} that runs the query on {@link OrmaConnection#getReaderScheduler()}
+     * @see OrmaIterator
+     */
     @NonNull
     public Observable<Model> executeAsObservable() {
-        return Observable.create(new Observable.OnSubscribe<Model>() {
+        return Observable.create(new OrmaIteratorOnSubscribe<>(this))
+                .subscribeOn(conn.getReaderScheduler());
+    }
+
+    /**
+     * Observes the result of the query with {@link #OBSERVE_DEBOUNCE_MILLIS}.
+     *
+     * @return An {@link Observable} that yields {@link #toList()} on subscription and on each change of the table
+     * @see #observe(long, TimeUnit)
+     */
+    @NonNull
+    public Observable<List<Model>> observe() {
+        return observe(OBSERVE_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Observes the result of the query. It runs the query on subscription, and runs it again only when the table,
+     * or a table joined for direct associations, is modified, after the changes settle for {@code debounce}.
+     * Changes in a transaction are notified once on commit. Queries run on {@link OrmaConnection#getReaderScheduler()}.
+     *
+     * @param debounce The time to wait for the changes to settle, or {@code 0} not to debounce
+     * @param unit     The unit of {@code debounce}
+     * @return An {@link Observable} that yields {@link #toList()} on subscription and on each change of the table
+     * @see OrmaConnection#observeTableChanges()
+     */
+    @NonNull
+    public Observable<List<Model>> observe(@IntRange(from = 0) final long debounce, @NonNull final TimeUnit unit) {
+        // the tables joined for direct associations as well as the table of the schema
+        final Set<String> observedTableNames = Collections.unmodifiableSet(
+                new HashSet<>(conn.findTableNames(schema.getSelectFromTableClause())));
+
+        return Observable.defer(new Func0<Observable<List<Model>>>() {
             @Override
-            public void call(final Subscriber<? super Model> subscriber) {
-                forEach(new Action1<Model>() {
-                    @Override
-                    public void call(Model item) {
-                        subscriber.onNext(item);
-                    }
-                });
-                subscriber.onCompleted();
+            public Observable<List<Model>> call() {
+                // each subscription has its own signal, which cancels the query in progress on unsubscription
+                final CancellationSignal signal = CancellationSignals.link(cancellationSignal);
+                final Selector<Model, ?> selector = Selector.this.clone().cancellationSignal(signal);
+
+                Observable<Set<String>> changes = conn.observeTableChanges()
+                        .filter(new Func1<Set<String>, Boolean>() {
+                            @Override
+                            public Boolean call(Set<String> tableNames) {
+                                return !Collections.disjoint(tableNames, observedTableNames);
+                            }
+                        });
+                if (debounce > 0) {
+                    changes = changes.debounce(debounce, unit, conn.getReaderScheduler());
+                }
+
+                return changes
+                        .startWith(observedTableNames)
+                        .onBackpressureLatest()
+                        .observeOn(conn.getReaderScheduler())
+                        .map(new Func1<Set<String>, List<Model>>() {
+                            @Override
+                            public List<Model> call(Set<String> tableNames) {
+                                return selector.toList();
+                            }
+                        })
+                        .onErrorResumeNext(new Func1<Throwable, Observable<List<Model>>>() {
+                            @Override
+                            public Observable<List<Model>> call(Throwable e) {
+                                return isCanceled(signal) ? Observable.<List<Model>>empty()
+                                        : Observable.<List<Model>>error(e);
+                            }
+                        })
+                        .doOnUnsubscribe(new Action0() {
+                            @Override
+                            public void call() {
+                                cancel(signal);
+                            }
+                        });
             }
         });
     }
 
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    static boolean isCanceled(@Nullable CancellationSignal signal) {
+        return signal != null && signal.isCanceled();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    static void cancel(@Nullable CancellationSignal signal) {
+        if (signal != null) {
+            signal.cancel();
+        }
+    }
+
     // implements Iterable<Model>
 
     /**
      * {@inheritDoc}
+     *
+     * The iterator is {@link java.io.Closeable}; close it if you stop the iteration before the end.
      */
     @NonNull
     @Override
-    public Iterator<Model> iterator() {
+    public OrmaIterator<Model> iterator() {
         return new OrmaIterator<>(this);
     }
 }
@@ -22,9 +22,20 @@ import com.github.gfx.android.orma.exception.NoValueException;
 import com.github.gfx.android.orma.gson.SingleAssociationTypeAdapterFactory;
 import com.github.gfx.android.orma.internal.Schemas;
 
+import android.database.Cursor;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 
 import rx.Single;
 import rx.SingleSubscriber;
@@ -41,31 +52,40 @@ public class SingleAssociation<Model> implements Parcelable {
 
     final Single<Model> single;
 
+    // the schema of a lazy association, which can be resolved by prefetch()
+    @Nullable
+    final Schema<Model> schema;
+
+    @Nullable
+    volatile Model prefetched;
+
     public SingleAssociation(long id, @NonNull Model model) {
         this.id = id;
         this.single = Single.just(model);
+        this.schema = null;
     }
 
     public SingleAssociation(long id, @NonNull Single<Model> single) {
         this.id = id;
         this.single = single;
+        this.schema = null;
     }
 
     public SingleAssociation(@NonNull final OrmaConnection conn, @NonNull final Schema<Model> schema, final long id) {
         this.id = id;
+        this.schema = schema;
         single = Single.create(new Single.OnSubscribe<Model>() {
             @Override
             public void call(SingleSubscriber<? super Model> subscriber) {
-                ColumnDef<Model, ?> primaryKey = schema.getPrimaryKey();
-                String whereClause = primaryKey.getEscapedName() + " = ?";
-                String[] whereArgs = {String.valueOf(id)};
-                Model model = conn.querySingle(schema, schema.getEscapedColumnNames(),
-                        whereClause, whereArgs, null, null, null, 0);
+                Model model = prefetched;
+                if (model == null) {
+                    model = conn.querySingleByPrimaryKey(schema, id);
+                }
                 if (model != null) {
                     subscriber.onSuccess(model);
                 } else {
                     subscriber.onError(new NoValueException("No value found for "
-                            + schema.getTableName() + "." + primaryKey.name + " = " + id));
+                            + schema.getTableName() + "." + schema.getPrimaryKey().name + " = " + id));
                 }
             }
         });
@@ -119,6 +139,82 @@ public class SingleAssociation<Model> implements Parcelable {
         return single.toBlocking().value();
     }
 
+    /**
+     * Loads the models of lazy associations by {@code SELECT ... IN (...)} queries for each schema and each chunk of
+     * their ids, and resolves the associations with them, so that they don't run a query for each. Associations
+     * whose models are not found are left as they are.
+     *
+     * @param conn         A connection
+     * @param associations Associations to resolve, which may include {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public static void prefetch(@NonNull OrmaConnection conn,
+            @NonNull Collection<? extends SingleAssociation<?>> associations) {
+        Map<Schema<Object>, List<SingleAssociation<Object>>> lazyAssociations = new LinkedHashMap<>();
+        for (SingleAssociation<?> association : associations) {
+            if (association != null && association.schema != null && association.prefetched == null) {
+                Schema<Object> schema = (Schema<Object>) association.schema;
+                List<SingleAssociation<Object>> list = lazyAssociations.get(schema);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    lazyAssociations.put(schema, list);
+                }
+                list.add((SingleAssociation<Object>) association);
+            }
+        }
+        for (Map.Entry<Schema<Object>, List<SingleAssociation<Object>>> entry : lazyAssociations.entrySet()) {
+            prefetch(conn, entry.getKey(), entry.getValue());
+        }
+    }
+
+    static void prefetch(@NonNull OrmaConnection conn, @NonNull Schema<Object> schema,
+            @NonNull List<SingleAssociation<Object>> associations) {
+        LinkedHashSet<Long> ids = new LinkedHashSet<>();
+        for (SingleAssociation<Object> association : associations) {
+            ids.add(association.id);
+        }
+
+        // the primary key is selected after the columns, for the implicit one, _rowid_, is not in them
+        ColumnDef<Object, ?> primaryKey = schema.getPrimaryKey();
+        String[] columnNames = schema.getEscapedColumnNames();
+        String[] selections = Arrays.copyOf(columnNames, columnNames.length + 1);
+        selections[columnNames.length] = primaryKey.getEscapedName().toString();
+
+        Map<Long, Object> models = new HashMap<>(ids.size());
+        List<Long> idList = new ArrayList<>(ids);
+        for (int i = 0; i < idList.size(); i += Inserter.MAX_BIND_ARGS) {
+            List<Long> chunk = idList.subList(i, Math.min(i + Inserter.MAX_BIND_ARGS, idList.size()));
+
+            StringBuilder clause = new StringBuilder();
+            clause.append(primaryKey.getEscapedName());
+            clause.append(" IN (");
+            for (int j = 0; j < chunk.size(); j++) {
+                if (j != 0) {
+                    clause.append(", ");
+                }
+                clause.append('?');
+            }
+            clause.append(')');
+
+            Cursor cursor = conn.query(schema, selections, clause.toString(), chunk.toArray(),
+                    null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    models.put(cursor.getLong(columnNames.length), conn.newModelFromCursor(schema, cursor));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        for (SingleAssociation<Object> association : associations) {
+            Object model = models.get(association.id);
+            if (model != null) {
+                association.prefetched = model;
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return "SingleAssociation{" +
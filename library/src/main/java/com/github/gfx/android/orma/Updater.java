@@ -54,6 +54,6 @@ public abstract class Updater<Model, U extends Updater<Model, ?>> extends OrmaCo
             public void call(SingleSubscriber<? super Integer> subscriber) {
                 subscriber.onSuccess(execute());
             }
-        });
+        }).subscribeOn(conn.getWriterScheduler());
     }
 }
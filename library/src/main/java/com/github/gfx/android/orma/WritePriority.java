@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma;
+
+/**
+ * The priority of a transaction queued by {@link OrmaConnection#transactionAsync(WritePriority, TransactionTask)}.
+ */
+public enum WritePriority {
+    /**
+     * For writes that users are waiting for, e.g. toggling a checkbox. They run before background writes,
+     * and are committed together within the group commit window. This is the default.
+     */
+    INTERACTIVE,
+
+    /**
+     * For long writes such as sync. Each runs alone in its own transaction after the interactive writes queued.
+     * Call {@link OrmaConnection#yieldIfContended()} between units of work to let interactive writes in.
+     */
+    BACKGROUND,
+}
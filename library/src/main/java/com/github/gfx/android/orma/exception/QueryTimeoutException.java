@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma.exception;
+
+/**
+ * Thrown when a query is canceled by {@link com.github.gfx.android.orma.OrmaConfiguration#queryTimeoutMillis(long)}.
+ */
+@SuppressWarnings("serial")
+public class QueryTimeoutException extends OrmaException {
+
+    public QueryTimeoutException(String detailMessage) {
+        super(detailMessage);
+    }
+
+    public QueryTimeoutException(String detailMessage, Throwable throwable) {
+        super(detailMessage, throwable);
+    }
+}
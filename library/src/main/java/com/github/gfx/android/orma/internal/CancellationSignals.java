@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gfx.android.orma.internal;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Helpers for {@link CancellationSignal}, which is available since Android 4.1.
+ */
+public class CancellationSignals {
+
+    // a signal has only one listener, so a listener for each parent cancels all the children
+    static final Map<CancellationSignal, Children> childrenMap = new WeakHashMap<>();
+
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+    }
+
+    /**
+     * Creates a signal that is canceled when {@code parent} is canceled, so that a query can be canceled both
+     * by the caller and by Orma itself. A parent may have any number of children, but it takes the
+     * {@link CancellationSignal.OnCancelListener} of {@code parent}. Do not pass {@code parent} to SQLite while
+     * the returned signal is in use, because SQLite sets its own listener.
+     *
+     * @param parent A signal given by the caller, or {@code null}
+     * @return A new signal, or {@code null} if the platform doesn't support cancellation
+     */
+    @Nullable
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public static CancellationSignal link(@Nullable CancellationSignal parent) {
+        if (!isSupported()) {
+            return null;
+        }
+        CancellationSignal signal = new CancellationSignal();
+        if (parent != null) {
+            Children children;
+            synchronized (childrenMap) {
+                children = childrenMap.get(parent);
+                if (children == null) {
+                    children = new Children();
+                    childrenMap.put(parent, children);
+                }
+                children.add(signal);
+            }
+            parent.setOnCancelListener(children);
+            // setOnCancelListener() doesn't call the listener again if it is already set
+            if (parent.isCanceled()) {
+                signal.cancel();
+            }
+        }
+        return signal;
+    }
+
+    /**
+     * Children of a signal, which are held weakly so that the finished ones are garbage-collected.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    static class Children implements CancellationSignal.OnCancelListener {
+
+        final Set<CancellationSignal> signals = Collections.newSetFromMap(
+                new WeakHashMap<CancellationSignal, Boolean>());
+
+        synchronized void add(CancellationSignal signal) {
+            signals.add(signal);
+        }
+
+        @Override
+        public void onCancel() {
+            List<CancellationSignal> canceled;
+            synchronized (this) {
+                canceled = new ArrayList<>(signals);
+                signals.clear();
+            }
+            for (CancellationSignal signal : canceled) {
+                signal.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma.internal;
+
+import com.github.gfx.android.orma.ChangeSet;
+
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the changes of a scope of {@link ChangeTracker}, which are published as a {@link ChangeSet}.
+ */
+public class ChangeRecorder {
+
+    final Set<String> tableNames = new HashSet<>();
+
+    final Set<String> untrackedTableNames = new HashSet<>();
+
+    final Map<String, Set<Object>> inserted = new HashMap<>();
+
+    final Map<String, Set<Object>> updated = new HashMap<>();
+
+    final Map<String, Set<Object>> deleted = new HashMap<>();
+
+    public boolean isEmpty() {
+        return tableNames.isEmpty();
+    }
+
+    /**
+     * Records a change that is not tracked by rows.
+     *
+     * @param tableName The name of a table
+     */
+    public void addTableChange(@NonNull String tableName) {
+        tableNames.add(tableName);
+        untrackedTableNames.add(tableName);
+    }
+
+    public void addInsertedKey(@NonNull String tableName, @NonNull Object key) {
+        tableNames.add(tableName);
+        if (!keysOf(deleted, tableName).remove(key)) {
+            keysOf(inserted, tableName).add(key);
+        } else {
+            // deleted and then inserted again
+            keysOf(updated, tableName).add(key);
+        }
+    }
+
+    public void addUpdatedKey(@NonNull String tableName, @NonNull Object key) {
+        tableNames.add(tableName);
+        if (!keysOf(inserted, tableName).contains(key)) {
+            keysOf(updated, tableName).add(key);
+        }
+    }
+
+    public void addDeletedKey(@NonNull String tableName, @NonNull Object key) {
+        tableNames.add(tableName);
+        if (!keysOf(inserted, tableName).remove(key)) {
+            keysOf(updated, tableName).remove(key);
+            keysOf(deleted, tableName).add(key);
+        }
+    }
+
+    /**
+     * Applies the changes of a nested scope.
+     *
+     * @param changes Changes recorded after the receiver's
+     */
+    public void addAll(@NonNull ChangeRecorder changes) {
+        for (String tableName : changes.tableNames) {
+            tableNames.add(tableName);
+            for (Object key : keysOf(changes.deleted, tableName)) {
+                addDeletedKey(tableName, key);
+            }
+            for (Object key : keysOf(changes.inserted, tableName)) {
+                addInsertedKey(tableName, key);
+            }
+            for (Object key : keysOf(changes.updated, tableName)) {
+                addUpdatedKey(tableName, key);
+            }
+        }
+        untrackedTableNames.addAll(changes.untrackedTableNames);
+    }
+
+    /**
+     * @return A snapshot of the changes, which is shared by the subscribers
+     */
+    @NonNull
+    public ChangeSet toChangeSet() {
+        return new ChangeSet(tableNames, untrackedTableNames, inserted, updated, deleted);
+    }
+
+    static Set<Object> keysOf(Map<String, Set<Object>> keys, String tableName) {
+        Set<Object> set = keys.get(tableName);
+        if (set == null) {
+            set = new HashSet<>();
+            keys.put(tableName, set);
+        }
+        return set;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeRecorder{" +
+                "tableNames=" + tableNames +
+                ", untrackedTableNames=" + untrackedTableNames +
+                ", inserted=" + inserted +
+                ", updated=" + updated +
+                ", deleted=" + deleted +
+                '}';
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gfx.android.orma.internal;
+
+import com.github.gfx.android.orma.ChangeSet;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import rx.Observable;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
+
+/**
+ * Tracks the changes made in each thread and publishes them when they are committed.
+ *
+ * Outside of a transaction, a change is published immediately. Inside of a transaction, changes are collected
+ * and published as a {@link ChangeSet} on the commit of the outermost transaction, or discarded on rollback.
+ * Nested scopes, i.e. savepoints, are merged into the enclosing one on success.
+ *
+ * It also holds an {@link IdentityMap} for each transaction, whose models are evicted when their rows are changed,
+ * or when the rows of the tables they join are changed.
+ */
+public class ChangeTracker {
+
+    final Subject<ChangeSet, ChangeSet> subject = PublishSubject.<ChangeSet>create().toSerialized();
+
+    final ThreadLocal<Deque<ChangeRecorder>> scopes = new ThreadLocal<Deque<ChangeRecorder>>() {
+        @Override
+        protected Deque<ChangeRecorder> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
+    final ThreadLocal<IdentityMap> identityMaps = new ThreadLocal<>();
+
+    // joined table name -> the tables whose schemas join it; written only before the tracker is used
+    final Map<String, Set<String>> joiningTables = new HashMap<>();
+
+    /**
+     * Registers the tables joined by a schema, e.g. for direct associations, so that the models of the schema in
+     * identity maps are evicted when any of them is changed. It must be called before the tracker is used.
+     *
+     * @param tableName        The table of a schema
+     * @param joinedTableNames The tables in the FROM clause of the schema, which may include {@code tableName}
+     */
+    public void addJoinedTables(@NonNull String tableName, @NonNull Collection<String> joinedTableNames) {
+        for (String joinedTableName : joinedTableNames) {
+            if (joinedTableName.equals(tableName)) {
+                continue;
+            }
+            Set<String> tableNames = joiningTables.get(joinedTableName);
+            if (tableNames == null) {
+                tableNames = new HashSet<>();
+                joiningTables.put(joinedTableName, tableNames);
+            }
+            tableNames.add(tableName);
+        }
+    }
+
+    /**
+     * Starts a transaction or a savepoint in the current thread.
+     */
+    public void begin() {
+        scopes.get().push(new ChangeRecorder());
+    }
+
+    /**
+     * Ends the innermost scope started by {@link #begin()}.
+     *
+     * @param successful {@code true} if the scope is committed or released, {@code false} if it is rolled back
+     */
+    public void end(boolean successful) {
+        Deque<ChangeRecorder> stack = scopes.get();
+        ChangeRecorder changes = stack.pop();
+        if (stack.isEmpty()) {
+            identityMaps.remove();
+        } else if (!successful) {
+            // models loaded after the savepoint may have the values rolled back
+            IdentityMap identityMap = identityMaps.get();
+            if (identityMap != null) {
+                identityMap.clear();
+            }
+        }
+        if (!successful || changes.isEmpty()) {
+            return;
+        }
+        if (stack.isEmpty()) {
+            publish(changes);
+        } else {
+            stack.peek().addAll(changes);
+        }
+    }
+
+    /**
+     * @return The number of scopes in the current thread, i.e. {@code 1} in a transaction without savepoints
+     */
+    public int depth() {
+        return scopes.get().size();
+    }
+
+    /**
+     * @return {@code true} if the current thread is in a scope started by {@link #begin()}
+     */
+    public boolean inTransaction() {
+        return !scopes.get().isEmpty();
+    }
+
+    /**
+     * @return The identity map of the transaction in the current thread, or {@code null} if no transaction is
+     * in progress
+     */
+    @Nullable
+    public IdentityMap identityMap() {
+        if (scopes.get().isEmpty()) {
+            return null;
+        }
+        IdentityMap identityMap = identityMaps.get();
+        if (identityMap == null) {
+            identityMap = new IdentityMap();
+            identityMaps.set(identityMap);
+        }
+        return identityMap;
+    }
+
+    /**
+     * Records a change on {@code tableName} without primary keys.
+     *
+     * @param tableName The name of a table, which is not escaped
+     */
+    public void changed(@NonNull String tableName) {
+        changed(Collections.singleton(tableName));
+    }
+
+    /**
+     * Records a change on {@code tableNames} without primary keys.
+     *
+     * @param tableNames The names of tables, which are not escaped
+     */
+    public void changed(@NonNull Collection<String> tableNames) {
+        ChangeRecorder changes = current();
+        IdentityMap identityMap = identityMaps.get();
+        for (String tableName : tableNames) {
+            changes.addTableChange(tableName);
+            if (identityMap != null) {
+                identityMap.clear(tableName);
+                clearJoiningTables(identityMap, tableName);
+            }
+        }
+        commitIfAutoCommit(changes);
+    }
+
+    /**
+     * Records rows inserted into {@code tableName}.
+     *
+     * @param tableName The name of a table, which is not escaped
+     * @param keys      The primary keys of the rows
+     */
+    public void inserted(@NonNull String tableName, @NonNull Collection<?> keys) {
+        ChangeRecorder changes = current();
+        for (Object key : keys) {
+            changes.addInsertedKey(tableName, key);
+        }
+        commitIfAutoCommit(changes);
+    }
+
+    /**
+     * Records rows updated in {@code tableName}.
+     *
+     * @param tableName The name of a table, which is not escaped
+     * @param keys      The primary keys of the rows
+     */
+    public void updated(@NonNull String tableName, @NonNull Collection<?> keys) {
+        ChangeRecorder changes = current();
+        IdentityMap identityMap = identityMaps.get();
+        for (Object key : keys) {
+            changes.addUpdatedKey(tableName, key);
+            if (identityMap != null) {
+                identityMap.remove(tableName, key);
+            }
+        }
+        if (identityMap != null) {
+            clearJoiningTables(identityMap, tableName);
+        }
+        commitIfAutoCommit(changes);
+    }
+
+    /**
+     * Records rows deleted from {@code tableName}.
+     *
+     * @param tableName The name of a table, which is not escaped
+     * @param keys      The primary keys of the rows
+     */
+    public void deleted(@NonNull String tableName, @NonNull Collection<?> keys) {
+        ChangeRecorder changes = current();
+        IdentityMap identityMap = identityMaps.get();
+        for (Object key : keys) {
+            changes.addDeletedKey(tableName, key);
+            if (identityMap != null) {
+                identityMap.remove(tableName, key);
+            }
+        }
+        if (identityMap != null) {
+            clearJoiningTables(identityMap, tableName);
+        }
+        commitIfAutoCommit(changes);
+    }
+
+    void clearJoiningTables(@NonNull IdentityMap identityMap, @NonNull String tableName) {
+        Set<String> tableNames = joiningTables.get(tableName);
+        if (tableNames != null) {
+            for (String joiningTableName : tableNames) {
+                identityMap.clear(joiningTableName);
+            }
+        }
+    }
+
+    ChangeRecorder current() {
+        ChangeRecorder changes = scopes.get().peek();
+        return changes != null ? changes : new ChangeRecorder();
+    }
+
+    void commitIfAutoCommit(ChangeRecorder changes) {
+        if (scopes.get().isEmpty() && !changes.isEmpty()) {
+            publish(changes);
+        }
+    }
+
+    void publish(ChangeRecorder changes) {
+        if (subject.hasObservers()) {
+            subject.onNext(changes.toChangeSet());
+        }
+    }
+
+    /**
+     * @return An {@link Observable} that yields the changes committed
+     */
+    @NonNull
+    public Observable<ChangeSet> observe() {
+        return subject.asObservable();
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gfx.android.orma.internal;
+
+import com.github.gfx.android.orma.ChangeSet;
+import com.github.gfx.android.orma.EntitySizer;
+import com.github.gfx.android.orma.Schema;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded LRU cache of models of a table keyed by primary keys, which is shared by all the threads.
+ *
+ * Entries are invalidated by committed {@link ChangeSet}s: only the rows changed if they are tracked by primary keys,
+ * or all the entries of the table otherwise. A change on a table joined by the schema, e.g. for direct associations,
+ * evicts all the entries. A model queried before an invalidation is not cached after it,
+ * so a concurrent commit never leaves a stale model in the cache.
+ *
+ * Cached models are shared by callers, so they must not be modified.
+ */
+public class EntityCache<Model> {
+
+    final Schema<Model> schema;
+
+    final int maxSize;
+
+    final Entries entries;
+
+    final AtomicLong hitCount = new AtomicLong();
+
+    final AtomicLong missCount = new AtomicLong();
+
+    final AtomicLong evictionCount = new AtomicLong();
+
+    // guarded by this
+    long generation = 0;
+
+    // guarded by this
+    Set<String> tableNames;
+
+    /**
+     * @param schema  The schema of models
+     * @param maxSize The max size of the cache in {@code sizer}'s unit
+     * @param sizer   A measure of models, or {@code null} to count models
+     */
+    public EntityCache(@NonNull Schema<Model> schema, @IntRange(from = 1) int maxSize,
+            @Nullable EntitySizer<? super Model> sizer) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be greater than 0: " + maxSize);
+        }
+        this.schema = schema;
+        this.maxSize = maxSize;
+        this.entries = new Entries(maxSize, sizer);
+        this.tableNames = Collections.singleton(schema.getTableName());
+    }
+
+    @NonNull
+    public Schema<Model> getSchema() {
+        return schema;
+    }
+
+    /**
+     * @param tableNames The tables which the models are queried from, i.e. the table of the schema and the tables
+     *                   joined by {@link Schema#getSelectFromTableClause()}
+     */
+    public synchronized void setTableNames(@NonNull Collection<String> tableNames) {
+        this.tableNames = new HashSet<>(tableNames);
+        this.tableNames.add(schema.getTableName());
+    }
+
+    /**
+     * @param primaryKey A primary key normalized by {@link OrmaConditionBase#normalizeBindArg(Object)}
+     * @return The cached model, or {@code null} if it is not cached
+     */
+    @Nullable
+    public Model get(@NonNull Object primaryKey) {
+        Model model = entries.get(primaryKey);
+        if (model != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return model;
+    }
+
+    /**
+     * @return The token to pass {@link #put(Object, Object, long)}, which must be taken before querying a model
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches {@code model} unless the cache is invalidated after {@code generation} is taken.
+     *
+     * @param primaryKey A primary key normalized by {@link OrmaConditionBase#normalizeBindArg(Object)}
+     * @param model      A model queried by {@code primaryKey}
+     * @param generation The value of {@link #generation()} before the query
+     * @return {@code true} if {@code model} is cached
+     */
+    public synchronized boolean put(@NonNull Object primaryKey, @NonNull Model model, long generation) {
+        if (this.generation != generation) {
+            return false;
+        }
+        entries.put(primaryKey, model);
+        return true;
+    }
+
+    /**
+     * Evicts the models changed by {@code changes}.
+     *
+     * @param changes Changes committed
+     */
+    public synchronized void invalidate(@NonNull ChangeSet changes) {
+        if (Collections.disjoint(tableNames, changes.getTableNames())) {
+            return;
+        }
+        generation++;
+        String tableName = schema.getTableName();
+        for (String changedTableName : changes.getTableNames()) {
+            if (!changedTableName.equals(tableName) && tableNames.contains(changedTableName)) {
+                // joined rows are not tracked by the keys of the models
+                entries.clear();
+                return;
+            }
+        }
+        if (!changes.hasRowChanges(tableName)) {
+            entries.clear();
+            return;
+        }
+        for (Object key : changes.getUpdatedKeys(tableName)) {
+            entries.remove(key);
+        }
+        for (Object key : changes.getDeletedKeys(tableName)) {
+            entries.remove(key);
+        }
+        // rows replaced by INSERT are not tracked by keys, so inserted keys are never cached
+    }
+
+    /**
+     * Evicts all the models.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The number of models in the cache, or the sum of their sizes if it has an {@link EntitySizer}
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    public long missCount() {
+        return missCount.get();
+    }
+
+    public long evictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return The ratio of hits to lookups, or {@code 0} if nothing is looked up yet
+     */
+    public double hitRate() {
+        long hits = hitCount.get();
+        long lookups = hits + missCount.get();
+        return lookups != 0 ? (double) hits / lookups : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "EntityCache{" +
+                "table=" + schema.getTableName() +
+                ", maxSize=" + maxSize +
+                ", size=" + size() +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                '}';
+    }
+
+    class Entries extends LruCache<Object, Model> {
+
+        @Nullable
+        final EntitySizer<? super Model> sizer;
+
+        boolean clearing = false;
+
+        Entries(int maxSize, @Nullable EntitySizer<? super Model> sizer) {
+            super(maxSize);
+            this.sizer = sizer;
+        }
+
+        void clear() {
+            clearing = true;
+            try {
+                evictAll();
+            } finally {
+                clearing = false;
+            }
+        }
+
+        @Override
+        protected int sizeOf(Object key, Model value) {
+            return sizer != null ? sizer.sizeOf(value) : 1;
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, Object key, Model oldValue, Model newValue) {
+            if (evicted && !clearing) {
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gfx.android.orma.internal;
+
+import com.github.gfx.android.orma.OrmaConnection;
+import com.github.gfx.android.orma.TransactionTask;
+import com.github.gfx.android.orma.WritePriority;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single writer that runs {@link TransactionTask}s one by one.
+ *
+ * Tasks queued within {@code windowMillis} of the first one in a batch are committed in a single physical
+ * transaction, so they share the write lock and the fsync. Each task runs in its own {@code SAVEPOINT},
+ * so a failed task is rolled back and reported to its {@link TransactionTask#onError(Exception)} without
+ * affecting the others in the batch.
+ *
+ * The drain loop is scheduled on {@code executor} at most one at a time, so any {@link Executor} serializes
+ * the writes.
+ *
+ * {@link WritePriority#INTERACTIVE} tasks run before {@link WritePriority#BACKGROUND} ones. A background task runs
+ * alone in a transaction without {@code SAVEPOINT}, so it can commit in chunks by
+ * {@link OrmaConnection#yieldIfContended()}, which runs the interactive tasks queued in the meantime.
+ */
+public class GroupCommitExecutor {
+
+    static final String TAG = "GroupCommitExecutor";
+
+    final OrmaConnection conn;
+
+    final Executor executor;
+
+    final long windowNanos;
+
+    final int maxBatchSize;
+
+    final PriorityBlockingQueue<Entry> queue = new PriorityBlockingQueue<>();
+
+    final AtomicLong sequence = new AtomicLong();
+
+    volatile Thread drainingThread;
+
+    final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    final AtomicLong commitCount = new AtomicLong();
+
+    final AtomicLong taskCount = new AtomicLong();
+
+    final AtomicLong failedTaskCount = new AtomicLong();
+
+    final AtomicLong maxCommittedBatchSize = new AtomicLong();
+
+    final AtomicLong totalQueueLatencyNanos = new AtomicLong();
+
+    final AtomicLong maxQueueLatencyNanos = new AtomicLong();
+
+    final Runnable drainer = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * @param conn         A connection to write
+     * @param executor     An executor to run the drain loop
+     * @param windowMillis The time to wait for more tasks after the first one in a batch,
+     *                     or {@code 0} to commit only the tasks already queued
+     * @param maxBatchSize The max number of tasks in a physical transaction
+     */
+    public GroupCommitExecutor(@NonNull OrmaConnection conn, @NonNull Executor executor,
+            @IntRange(from = 0) long windowMillis, @IntRange(from = 1) int maxBatchSize) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("windowMillis must not be negative: " + windowMillis);
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be greater than 0: " + maxBatchSize);
+        }
+        this.conn = conn;
+        this.executor = executor;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Queues {@code task} to run in a transaction.
+     *
+     * @param task      A task to run
+     * @param exclusive {@code false} if the task may run in a non-exclusive transaction
+     */
+    public void execute(@NonNull TransactionTask task, boolean exclusive) {
+        execute(task, exclusive, WritePriority.INTERACTIVE);
+    }
+
+    /**
+     * Queues {@code task} to run in a transaction.
+     *
+     * @param task      A task to run
+     * @param exclusive {@code false} if the task may run in a non-exclusive transaction
+     * @param priority  The priority of the task
+     */
+    public void execute(@NonNull TransactionTask task, boolean exclusive, @NonNull WritePriority priority) {
+        queue.add(new Entry(task, exclusive, priority, sequence.getAndIncrement()));
+        schedule();
+    }
+
+    void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(drainer);
+        }
+    }
+
+    void drain() {
+        drainingThread = Thread.currentThread();
+        try {
+            List<Entry> batch;
+            while (!(batch = takeBatch(true)).isEmpty()) {
+                commit(batch);
+            }
+        } finally {
+            drainingThread = null;
+            scheduled.set(false);
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * @param waitForWindow {@code false} to take only the tasks already queued
+     * @return A batch of interactive tasks, or a background task alone
+     */
+    @NonNull
+    List<Entry> takeBatch(boolean waitForWindow) {
+        List<Entry> batch = new ArrayList<>();
+        Entry entry = queue.poll();
+        if (entry == null) {
+            return batch;
+        }
+        batch.add(entry);
+        if (entry.priority == WritePriority.BACKGROUND) {
+            return batch;
+        }
+
+        long deadline = waitForWindow ? entry.queuedAt + windowNanos : 0;
+        try {
+            while (batch.size() < maxBatchSize) {
+                entry = queue.poll();
+                if (entry == null) {
+                    long timeout = deadline - System.nanoTime();
+                    if (timeout <= 0) {
+                        break;
+                    }
+                    entry = queue.poll(timeout, TimeUnit.NANOSECONDS);
+                    if (entry == null) {
+                        break;
+                    }
+                }
+                if (entry.priority == WritePriority.BACKGROUND) {
+                    // it keeps its sequence, so it is taken next time in order
+                    queue.add(entry);
+                    break;
+                }
+                batch.add(entry);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return batch;
+    }
+
+    void commit(final List<Entry> batch) {
+        long startedAt = System.nanoTime();
+        boolean exclusive = false;
+        for (Entry entry : batch) {
+            recordQueueLatency(startedAt - entry.queuedAt);
+            exclusive |= entry.exclusive;
+        }
+
+        final List<Exception> errors = new ArrayList<>(batch.size());
+        final Exception[] transactionError = new Exception[1];
+        // a background task runs without savepoints so that it can yield the transaction
+        final boolean alone = batch.size() == 1 && batch.get(0).priority == WritePriority.BACKGROUND;
+
+        TransactionTask batchTask = new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                if (alone) {
+                    batch.get(0).task.execute();
+                    return;
+                }
+                for (Entry entry : batch) {
+                    errors.add(conn.executeInSavepoint(entry.task));
+                }
+            }
+
+            @Override
+            public void onError(@NonNull Exception exception) {
+                transactionError[0] = exception;
+            }
+        };
+
+        try {
+            if (exclusive) {
+                conn.transactionSync(batchTask);
+            } else {
+                conn.transactionNonExclusiveSync(batchTask);
+            }
+        } catch (Exception e) {
+            transactionError[0] = e;
+        }
+
+        commitCount.incrementAndGet();
+        taskCount.addAndGet(batch.size());
+        updateMax(maxCommittedBatchSize, batch.size());
+
+        // callbacks run after the transaction ends, and their exceptions must not stop the writer
+        for (int i = 0; i < batch.size(); i++) {
+            Exception error = transactionError[0] != null ? transactionError[0]
+                    : i < errors.size() ? errors.get(i) : null;
+            if (error != null) {
+                failedTaskCount.incrementAndGet();
+                TransactionTask task = batch.get(i).task;
+                try {
+                    task.onError(error);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "onError() of " + task + " threw an exception", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the current thread is the writer and interactive tasks are waiting for it
+     */
+    public boolean hasPendingInteractiveTasks() {
+        if (drainingThread != Thread.currentThread()) {
+            return false;
+        }
+        Entry entry = queue.peek();
+        return entry != null && entry.priority == WritePriority.INTERACTIVE;
+    }
+
+    /**
+     * Runs the interactive tasks queued, in the writer thread. It must be called outside of transactions,
+     * e.g. when a background task yields its transaction.
+     */
+    public void runPendingInteractiveTasks() {
+        while (hasPendingInteractiveTasks()) {
+            List<Entry> batch = takeBatch(false);
+            if (batch.isEmpty()) {
+                break;
+            }
+            if (batch.get(0).priority == WritePriority.BACKGROUND) {
+                queue.add(batch.get(0));
+                break;
+            }
+            commit(batch);
+        }
+    }
+
+    void recordQueueLatency(long latencyNanos) {
+        totalQueueLatencyNanos.addAndGet(latencyNanos);
+        updateMax(maxQueueLatencyNanos, latencyNanos);
+    }
+
+    static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return The number of tasks waiting for the writer
+     */
+    public int queueSize() {
+        return queue.size();
+    }
+
+    /**
+     * @return The number of physical transactions committed or rolled back
+     */
+    public long commitCount() {
+        return commitCount.get();
+    }
+
+    /**
+     * @return The number of tasks run, including failed ones
+     */
+    public long taskCount() {
+        return taskCount.get();
+    }
+
+    /**
+     * @return The number of tasks whose {@link TransactionTask#onError(Exception)} was called
+     */
+    public long failedTaskCount() {
+        return failedTaskCount.get();
+    }
+
+    /**
+     * @return The average number of tasks per physical transaction
+     */
+    public double averageBatchSize() {
+        long commits = commitCount.get();
+        return commits != 0 ? (double) taskCount.get() / commits : 0.0;
+    }
+
+    /**
+     * @return The max number of tasks in a physical transaction
+     */
+    public long maxBatchSize() {
+        return maxCommittedBatchSize.get();
+    }
+
+    /**
+     * @return The average time in milliseconds from queuing a task to starting its transaction
+     */
+    public double averageQueueLatencyMillis() {
+        long tasks = taskCount.get();
+        return tasks != 0 ? (double) totalQueueLatencyNanos.get() / tasks / TimeUnit.MILLISECONDS.toNanos(1) : 0.0;
+    }
+
+    /**
+     * @return The max time in milliseconds from queuing a task to starting its transaction
+     */
+    public double maxQueueLatencyMillis() {
+        return (double) maxQueueLatencyNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return "GroupCommitExecutor{" +
+                "commitCount=" + commitCount +
+                ", taskCount=" + taskCount +
+                ", failedTaskCount=" + failedTaskCount +
+                ", averageBatchSize=" + averageBatchSize() +
+                ", maxBatchSize=" + maxCommittedBatchSize +
+                ", averageQueueLatencyMillis=" + averageQueueLatencyMillis() +
+                ", maxQueueLatencyMillis=" + maxQueueLatencyMillis() +
+                '}';
+    }
+
+    static class Entry implements Comparable<Entry> {
+
+        final TransactionTask task;
+
+        final boolean exclusive;
+
+        final WritePriority priority;
+
+        final long sequence;
+
+        final long queuedAt = System.nanoTime();
+
+        Entry(TransactionTask task, boolean exclusive, WritePriority priority, long sequence) {
+            this.task = task;
+            this.exclusive = exclusive;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(@NonNull Entry another) {
+            if (priority != another.priority) {
+                return priority.compareTo(another.priority);
+            }
+            return sequence < another.sequence ? -1 : (sequence == another.sequence ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gfx.android.orma.internal;
+
+import com.github.gfx.android.orma.Schema;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Models loaded in a transaction keyed by their tables and primary keys, so that a row is hydrated only once
+ * and the same instance is returned for it until the transaction ends. It is used only by the thread of the
+ * transaction, so it is not thread-safe.
+ *
+ * Models of rows written in the transaction are evicted by {@link ChangeTracker}.
+ */
+public class IdentityMap {
+
+    final Map<String, Map<Object, Object>> tables = new HashMap<>();
+
+    long hitCount = 0;
+
+    /**
+     * @param schema     The schema of a model
+     * @param primaryKey A primary key normalized by {@link OrmaConditionBase#normalizeBindArg(Object)}
+     * @return The model loaded before, or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    public <Model> Model get(@NonNull Schema<Model> schema, @NonNull Object primaryKey) {
+        Map<Object, Object> models = tables.get(schema.getTableName());
+        Model model = models != null ? (Model) models.get(primaryKey) : null;
+        if (model != null) {
+            hitCount++;
+        }
+        return model;
+    }
+
+    /**
+     * @param schema     The schema of a model
+     * @param primaryKey A primary key normalized by {@link OrmaConditionBase#normalizeBindArg(Object)}
+     * @param model      A model with all the columns
+     */
+    public <Model> void put(@NonNull Schema<Model> schema, @NonNull Object primaryKey, @NonNull Model model) {
+        Map<Object, Object> models = tables.get(schema.getTableName());
+        if (models == null) {
+            models = new HashMap<>();
+            tables.put(schema.getTableName(), models);
+        }
+        models.put(primaryKey, model);
+    }
+
+    public void remove(@NonNull String tableName, @NonNull Object primaryKey) {
+        Map<Object, Object> models = tables.get(tableName);
+        if (models != null) {
+            models.remove(primaryKey);
+        }
+    }
+
+    public void clear(@NonNull String tableName) {
+        tables.remove(tableName);
+    }
+
+    public void clear() {
+        tables.clear();
+    }
+
+    /**
+     * @return The number of lookups served by the map
+     */
+    public long hitCount() {
+        return hitCount;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gfx.android.orma.internal;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append-only file of rows to insert, which survives process death until the rows are committed.
+ *
+ * Rows are appended to {@code file}. {@link #rotate()} moves the rows to a backlog file, {@code file + ".1"},
+ * before they are inserted, and {@link #commit()} deletes it after the transaction. On restart, {@link #recover()}
+ * reads both files, so rows are inserted at least once. A record truncated by a crash is ignored.
+ *
+ * Each record is the number of values followed by the values with their type tags. Values must be normalized by
+ * {@link OrmaConditionBase#normalizeBindArg(Object)}.
+ */
+public class InsertJournal implements Closeable {
+
+    static final int NULL = 0;
+
+    static final int LONG = 1;
+
+    static final int DOUBLE = 2;
+
+    static final int STRING = 3;
+
+    static final int BLOB = 4;
+
+    final File file;
+
+    final File backlog;
+
+    final boolean sync;
+
+    FileOutputStream fileOut;
+
+    DataOutputStream out;
+
+    /**
+     * @param file A journal file
+     * @param sync {@code true} to call {@code fsync(2)} on each append, which survives power loss in exchange for
+     *             latency. Without it, rows survive process death but may be lost on power loss.
+     */
+    public InsertJournal(@NonNull File file, boolean sync) {
+        this.file = file;
+        this.backlog = new File(file.getPath() + ".1");
+        this.sync = sync;
+    }
+
+    /**
+     * @return The rows left by the previous process, which are not committed yet
+     * @throws IOException if the journal can't be read
+     */
+    @NonNull
+    public synchronized List<Object[]> recover() throws IOException {
+        List<Object[]> rows = new ArrayList<>();
+        read(backlog, rows);
+        read(file, rows);
+        return rows;
+    }
+
+    /**
+     * Appends a row.
+     *
+     * @param values The values of a row
+     * @throws IOException if the journal can't be written
+     */
+    public synchronized void append(@NonNull Object[] values) throws IOException {
+        if (out == null) {
+            fileOut = new FileOutputStream(file, true);
+            out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        }
+        out.writeInt(values.length);
+        for (Object value : values) {
+            write(out, value);
+        }
+        out.flush();
+        if (sync) {
+            fileOut.getFD().sync();
+        }
+    }
+
+    /**
+     * Moves the rows appended so far to the backlog, which is deleted by {@link #commit()}.
+     * If the backlog already exists, i.e. recovered rows are not committed yet, the rows are appended to it.
+     *
+     * @throws IOException if the journal can't be moved
+     */
+    public synchronized void rotate() throws IOException {
+        closeOutput();
+        if (!file.exists()) {
+            return;
+        }
+        if (!backlog.exists()) {
+            if (!file.renameTo(backlog)) {
+                throw new IOException("Failed to rename " + file + " to " + backlog);
+            }
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>();
+        read(file, rows);
+        DataOutputStream backlogOut = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(backlog, true)));
+        try {
+            for (Object[] values : rows) {
+                backlogOut.writeInt(values.length);
+                for (Object value : values) {
+                    write(backlogOut, value);
+                }
+            }
+        } finally {
+            backlogOut.close();
+        }
+        delete(file);
+    }
+
+    /**
+     * Deletes the backlog, whose rows have been committed.
+     *
+     * @throws IOException if the backlog can't be deleted
+     */
+    public synchronized void commit() throws IOException {
+        delete(backlog);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeOutput();
+    }
+
+    void closeOutput() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+            fileOut = null;
+        }
+    }
+
+    static void delete(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Failed to delete " + file);
+        }
+    }
+
+    static void read(File file, List<Object[]> rows) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            for (; ; ) {
+                int n;
+                try {
+                    n = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                Object[] values = new Object[n];
+                for (int i = 0; i < n; i++) {
+                    values[i] = read(in);
+                }
+                rows.add(values);
+            }
+        } catch (EOFException e) {
+            // the last record is truncated
+        } finally {
+            in.close();
+        }
+    }
+
+    static void write(DataOutputStream out, @Nullable Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(BLOB);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else {
+            // writeUTF() is limited to 64KB
+            byte[] bytes = value.toString().getBytes("UTF-8");
+            out.writeByte(STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    @Nullable
+    static Object read(DataInputStream in) throws IOException {
+        int type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case STRING: {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, "UTF-8");
+            }
+            case BLOB: {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return bytes;
+            }
+            default:
+                throw new IOException("Broken journal: unknown type " + type);
+        }
+    }
+}
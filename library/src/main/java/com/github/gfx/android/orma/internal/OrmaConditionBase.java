@@ -39,8 +39,11 @@ public abstract class OrmaConditionBase<Model, C extends OrmaConditionBase<Model
     @Nullable
     protected StringBuilder whereClause;
 
+    /**
+     * Typed arguments: {@code null}, {@link Long}, {@link Double}, {@link String}, or {@code byte[]}.
+     */
     @Nullable
-    protected ArrayList<String> bindArgs;
+    protected ArrayList<Object> bindArgs;
 
     public OrmaConditionBase(@NonNull OrmaConnection conn, @NonNull Schema<Model> schema) {
         this.conn = conn;
@@ -66,13 +69,31 @@ public abstract class OrmaConditionBase<Model, C extends OrmaConditionBase<Model
         }
 
         for (Object arg : args) {
-            if (arg == null) {
-                bindArgs.add(null);
-            } else if (arg instanceof Boolean) {
-                bindArgs.add((Boolean) arg ? "1" : "0");
-            } else {
-                bindArgs.add(arg.toString());
-            }
+            bindArgs.add(normalizeBindArg(arg));
+        }
+    }
+
+    /**
+     * Converts a value into a type SQLite can bind without stringifying numbers,
+     * so that {@code ?} is compared as {@code INTEGER} or {@code REAL} even without column affinity,
+     * e.g. in {@code HAVING COUNT(*) > ?}.
+     *
+     * @param arg A value to bind
+     * @return {@code null}, {@link Long}, {@link Double}, {@link String}, or {@code byte[]}
+     */
+    @Nullable
+    public static Object normalizeBindArg(@Nullable Object arg) {
+        if (arg == null || arg instanceof String || arg instanceof Long || arg instanceof Double
+                || arg instanceof byte[]) {
+            return arg;
+        } else if (arg instanceof Boolean) {
+            return (Boolean) arg ? 1L : 0L;
+        } else if (arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+            return ((Number) arg).longValue();
+        } else if (arg instanceof Float) {
+            return ((Number) arg).doubleValue();
+        } else {
+            return arg.toString();
         }
     }
 
@@ -177,10 +198,9 @@ public abstract class OrmaConditionBase<Model, C extends OrmaConditionBase<Model
     }
 
     @Nullable
-    protected String[] getBindArgs() {
+    protected Object[] getBindArgs() {
         if (bindArgs != null) {
-            String[] array = new String[bindArgs.size()];
-            return bindArgs.toArray(array);
+            return bindArgs.toArray();
         } else {
             return null;
         }
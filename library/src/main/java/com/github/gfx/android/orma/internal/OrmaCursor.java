@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gfx.android.orma.internal;
+
+import android.database.CursorWindow;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteQuery;
+import android.os.Build;
+import android.support.annotation.IntRange;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link SQLiteCursor} that counts how many times its {@link CursorWindow} is filled,
+ * and that uses a {@code CursorWindow} of the specified size if the platform supports it (Android 9.0 or later).
+ */
+public class OrmaCursor extends SQLiteCursor {
+
+    static final String TAG = "OrmaCursor";
+
+    final long windowSize;
+
+    @Nullable
+    final AtomicLong totalWindowFillCount;
+
+    boolean counted = false;
+
+    int windowFillCount = 0;
+
+    /**
+     * @param windowSize           The size of the cursor window in bytes, or {@code 0} for the platform default
+     * @param totalWindowFillCount A counter shared by cursors, incremented for each window fill
+     */
+    public OrmaCursor(SQLiteCursorDriver driver, String editTable, SQLiteQuery query,
+            @IntRange(from = 0) long windowSize, @Nullable AtomicLong totalWindowFillCount) {
+        super(driver, editTable, query);
+        this.windowSize = windowSize;
+        this.totalWindowFillCount = totalWindowFillCount;
+    }
+
+    /**
+     * @return The number of times the window has been filled, which includes the first fill
+     */
+    public int getWindowFillCount() {
+        return windowFillCount;
+    }
+
+    @Override
+    public int getCount() {
+        if (!counted) {
+            // the first call of getCount() fills the window
+            counted = true;
+            prepareWindow();
+            incrementWindowFillCount();
+        }
+        return super.getCount();
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        CursorWindow window = getWindow();
+        if (window == null
+                || newPosition < window.getStartPosition()
+                || newPosition >= (window.getStartPosition() + window.getNumRows())) {
+            prepareWindow();
+            incrementWindowFillCount();
+        }
+        return super.onMove(oldPosition, newPosition);
+    }
+
+    void incrementWindowFillCount() {
+        windowFillCount++;
+        if (totalWindowFillCount != null) {
+            totalWindowFillCount.incrementAndGet();
+        }
+    }
+
+    void prepareWindow() {
+        if (windowSize > 0 && getWindow() == null) {
+            CursorWindow window = createCursorWindow(getDatabase().getPath(), windowSize);
+            if (window != null) {
+                setWindow(window);
+            }
+        }
+    }
+
+    /**
+     * @return A new {@link CursorWindow} of {@code windowSize} bytes, or {@code null} if the platform doesn't support
+     * it.
+     */
+    @Nullable
+    public static CursorWindow createCursorWindow(String name, long windowSize) {
+        // CursorWindow(String, long) is available since API 28
+        if (Build.VERSION.SDK_INT < 28) {
+            return null;
+        }
+        try {
+            Constructor<CursorWindow> constructor = CursorWindow.class.getConstructor(String.class, long.class);
+            return constructor.newInstance(name, windowSize);
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to create a CursorWindow of " + windowSize + " bytes", e);
+            return null;
+        }
+    }
+}
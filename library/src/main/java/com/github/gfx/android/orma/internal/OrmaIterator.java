@@ -16,79 +16,130 @@
 
 package com.github.gfx.android.orma.internal;
 
+import com.github.gfx.android.orma.ColumnDef;
+import com.github.gfx.android.orma.OrderSpec;
 import com.github.gfx.android.orma.Selector;
 
 import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
-public class OrmaIterator<Model> implements Iterator<Model> {
+/**
+ * An iterator that streams models from cursors without {@code COUNT(*)}. It detects the end from the cursor itself,
+ * and closes the cursor when it reaches the end. Call {@link #close()} to release the cursor on an early exit.
+ *
+ * If the selector has no ordering, or it is ordered by a single {@link OrderSpec} of an indexed, non-null
+ * {@code INTEGER} or {@code TEXT} column, models are loaded in batches by keyset pagination, i.e.
+ * {@code WHERE key > lastKey}, which doesn't rescan the rows already read. Otherwise it walks a single cursor,
+ * whose window is filled on demand.
+ *
+ * If {@link Selector#cancellationSignal(android.os.CancellationSignal)} is canceled, the next query or window fill
+ * throws {@link android.os.OperationCanceledException}.
+ */
+public class OrmaIterator<Model> implements Iterator<Model>, Closeable {
 
     static final int batchSize = 2000;
 
-    final Selector<Model, ?> selector;
+    static final String ROWID = "_rowid_";
 
-    final int totalCount;
+    static final int UNKNOWN = 0;
 
-    int totalPos = 0;
+    static final int READY = 1;
+
+    static final int DONE = 2;
+
+    final Selector<Model, ?> selector;
 
-    int offset = 0;
+    @Nullable
+    final Keyset keyset;
 
     Cursor cursor;
 
-    int cursorPos = 0;
+    int state = UNKNOWN;
+
+    @Nullable
+    Object[] lastKey;
 
     public OrmaIterator(Selector<Model, ?> selector) {
         this.selector = selector;
-        this.totalCount = selector.count();
-        fill();
+        this.keyset = Keyset.create(selector);
     }
 
     void finish() {
-        cursor.close();
+        if (cursor != null) {
+            cursor.close();
+        }
+        state = DONE;
     }
 
     void fill() {
         if (cursor != null) {
             cursor.close();
         }
-        cursor = selector
-                .clone()
-                .limit(batchSize)
-                .offset(offset)
-                .execute();
-
-        offset += batchSize;
-        cursorPos = 0;
-    }
 
-    @Override
-    public boolean hasNext() {
-        return totalPos < totalCount;
+        if (keyset != null) {
+            cursor = keyset.execute(selector, lastKey, batchSize);
+        } else {
+            cursor = selector.execute();
+        }
     }
 
-    @Override
-    public Model next() {
-        if (totalPos >= totalCount) {
-            throw new NoSuchElementException("OrmaIterator#next()");
-        }
+    boolean isLastBatch() {
+        return keyset == null || cursor.getCount() < batchSize;
+    }
 
-        if (cursor.isLast()) {
+    boolean advance() {
+        if (cursor == null) {
             fill();
         }
+        if (cursor.moveToNext()) {
+            return true;
+        }
+        if (isLastBatch()) {
+            return false;
+        }
+        if (keyset != null) {
+            cursor.moveToLast();
+            lastKey = keyset.readKey(cursor);
+        }
+        fill();
+        return cursor.moveToNext();
+    }
 
-        cursor.moveToPosition(cursorPos);
-        Model model = selector.newModelFromCursor(cursor);
-
-        totalPos++;
-        cursorPos++;
+    @Override
+    public boolean hasNext() {
+        if (state == UNKNOWN) {
+            if (advance()) {
+                state = READY;
+            } else {
+                finish();
+            }
+        }
+        return state == READY;
+    }
 
+    @Override
+    public Model next() {
         if (!hasNext()) {
-            finish();
+            throw new NoSuchElementException("OrmaIterator#next()");
         }
+        state = UNKNOWN;
+        return selector.newModelFromCursor(cursor);
+    }
 
-        return model;
+    /**
+     * Closes the current cursor. {@link #hasNext()} returns {@code false} after {@code close()}.
+     */
+    @Override
+    public void close() {
+        finish();
     }
 
     @Override
@@ -96,4 +147,103 @@ public class OrmaIterator<Model> implements Iterator<Model> {
         throw new UnsupportedOperationException("Iterator#remove()");
     }
 
+    static class Keyset {
+
+        final String key;
+
+        final boolean integerKey;
+
+        final boolean ascending;
+
+        final boolean needsTiebreak;
+
+        // qualified because the table may be joined with direct associations
+        final String rowid;
+
+        Keyset(String key, boolean integerKey, boolean ascending, boolean needsTiebreak, String rowid) {
+            this.key = key;
+            this.integerKey = integerKey;
+            this.ascending = ascending;
+            this.needsTiebreak = needsTiebreak;
+            this.rowid = rowid;
+        }
+
+        @Nullable
+        static <Model> Keyset create(Selector<Model, ?> selector) {
+            List<OrderSpec<Model>> orderSpecs = selector.getSeekableOrderSpecs();
+            if (orderSpecs == null || orderSpecs.size() > 1) {
+                return null;
+            }
+            String rowid = selector.getSchema().getEscapedTableName() + "." + ROWID;
+            if (orderSpecs.isEmpty()) {
+                return new Keyset(rowid, true, true, false, rowid);
+            }
+
+            OrderSpec<Model> orderSpec = orderSpecs.get(0);
+            ColumnDef<Model, ?> column = orderSpec.column;
+            boolean unique = column.isPrimaryKey() || column.isUnique();
+            if (!(unique || column.isIndexed()) || column.isNullable()
+                    || !(column.storageType.equals("INTEGER") || column.storageType.equals("TEXT"))) {
+                return null;
+            }
+            return new Keyset(column.getEscapedName().toString(), column.storageType.equals("INTEGER"),
+                    orderSpec.ordering.equals(OrderSpec.ASC), !unique, rowid);
+        }
+
+        @NonNull
+        Cursor execute(Selector<?, ?> selector, @Nullable Object[] lastKey, int limit) {
+            String[] columns = selector.getEscapedColumnNames();
+            List<String> columnList = new ArrayList<>(columns.length + 2);
+            columnList.addAll(Arrays.asList(columns));
+            columnList.add(key);
+            if (needsTiebreak) {
+                columnList.add(rowid);
+            }
+
+            String whereClause = selector.getWhereClause();
+            List<Object> bindArgs = new ArrayList<>();
+            Object[] selectorBindArgs = selector.getBindArgs();
+            if (selectorBindArgs != null) {
+                bindArgs.addAll(Arrays.asList(selectorBindArgs));
+            }
+
+            if (lastKey != null) {
+                String op = ascending ? " > ?" : " < ?";
+                String seek;
+                if (needsTiebreak) {
+                    seek = "(" + key + op + " OR (" + key + " = ? AND " + rowid + op + "))";
+                    bindArgs.add(lastKey[0]);
+                    bindArgs.add(lastKey[0]);
+                    bindArgs.add(lastKey[1]);
+                } else {
+                    seek = key + op;
+                    bindArgs.add(lastKey[0]);
+                }
+                whereClause = whereClause != null ? "(" + whereClause + ") AND " + seek : seek;
+            }
+
+            String orderBy = selector.getOrderingTerms();
+            if (orderBy == null) {
+                orderBy = key + " ASC";
+            } else if (needsTiebreak) {
+                orderBy += ", " + rowid + (ascending ? " ASC" : " DESC");
+            }
+
+            return selector.getConnection().query(selector.getSchema(), columnList.toArray(new String[columnList.size()]),
+                    whereClause, bindArgs.toArray(), null, null, orderBy,
+                    String.valueOf(limit), selector.getCursorWindowSize(), selector.getPrefetch(),
+                    selector.getCancellationSignal());
+        }
+
+        @NonNull
+        Object[] readKey(Cursor cursor) {
+            int index = cursor.getColumnCount() - (needsTiebreak ? 2 : 1);
+            Object value = integerKey ? (Object) cursor.getLong(index) : cursor.getString(index);
+            if (needsTiebreak) {
+                return new Object[]{value, cursor.getLong(index + 1)};
+            } else {
+                return new Object[]{value};
+            }
+        }
+    }
 }
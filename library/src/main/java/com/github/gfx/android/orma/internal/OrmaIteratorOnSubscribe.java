@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gfx.android.orma.internal;
+
+import com.github.gfx.android.orma.Selector;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.Producer;
+import rx.Subscriber;
+import rx.exceptions.Exceptions;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Emits models from an {@link OrmaIterator} as many as requested, so rows are read from the cursor only when the
+ * subscriber is ready for them. The cursor is closed on completion, on error, or as soon as the subscriber
+ * unsubscribes. Unsubscription also cancels the query in progress via {@link CancellationSignal} on Android 4.1
+ * or later.
+ */
+public class OrmaIteratorOnSubscribe<Model> implements Observable.OnSubscribe<Model> {
+
+    final Selector<Model, ?> selector;
+
+    public OrmaIteratorOnSubscribe(@NonNull Selector<Model, ?> selector) {
+        this.selector = selector;
+    }
+
+    @Override
+    public void call(Subscriber<? super Model> subscriber) {
+        // a query in progress is canceled on unsubscription
+        final CancellationSignal signal = CancellationSignals.link(selector.getCancellationSignal());
+        Selector<Model, ?> selector = signal != null ? this.selector.clone().cancellationSignal(signal) : this.selector;
+
+        IteratorProducer<Model> producer = new IteratorProducer<>(subscriber, selector.iterator());
+        subscriber.add(Subscriptions.create(producer));
+        if (signal != null) {
+            subscriber.add(Subscriptions.create(new Action0() {
+                @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+                @Override
+                public void call() {
+                    signal.cancel();
+                }
+            }));
+        }
+        subscriber.setProducer(producer);
+    }
+
+    /**
+     * The iterator is used only in {@link #drain()}, which runs in a thread at a time: the one that increments the
+     * requested count from zero. Unsubscription counts as a request, so the iterator is closed by the draining thread.
+     */
+    static class IteratorProducer<Model> extends AtomicLong implements Producer, Action0 {
+
+        final Subscriber<? super Model> subscriber;
+
+        final OrmaIterator<Model> iterator;
+
+        IteratorProducer(Subscriber<? super Model> subscriber, OrmaIterator<Model> iterator) {
+            this.subscriber = subscriber;
+            this.iterator = iterator;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n < 0) {
+                throw new IllegalArgumentException("n must not be negative: " + n);
+            }
+            if (n > 0 && getAndAddRequest(n) == 0) {
+                drain();
+            }
+        }
+
+        // called on unsubscription
+        @Override
+        public void call() {
+            if (getAndAddRequest(1) == 0) {
+                drain();
+            }
+        }
+
+        /**
+         * Adds {@code n} to the requested count, which is capped at {@link Long#MAX_VALUE}.
+         *
+         * @return The requested count before the addition
+         */
+        long getAndAddRequest(long n) {
+            for (; ; ) {
+                long current = get();
+                long next = current + n;
+                if (next < 0) {
+                    next = Long.MAX_VALUE;
+                }
+                if (compareAndSet(current, next)) {
+                    return current;
+                }
+            }
+        }
+
+        void drain() {
+            long requested = get();
+            for (; ; ) {
+                long emitted = 0;
+                while (emitted != requested) {
+                    if (subscriber.isUnsubscribed()) {
+                        iterator.close();
+                        return;
+                    }
+                    Model model;
+                    try {
+                        if (!iterator.hasNext()) {
+                            subscriber.onCompleted();
+                            return;
+                        }
+                        model = iterator.next();
+                    } catch (Throwable e) {
+                        onError(e);
+                        return;
+                    }
+                    subscriber.onNext(model);
+                    emitted++;
+                }
+
+                if (subscriber.isUnsubscribed()) {
+                    iterator.close();
+                    return;
+                }
+                // completes without waiting for another request if the rows are exhausted
+                try {
+                    if (!iterator.hasNext()) {
+                        subscriber.onCompleted();
+                        return;
+                    }
+                } catch (Throwable e) {
+                    onError(e);
+                    return;
+                }
+
+                requested = addAndGet(-emitted);
+                if (requested == 0) {
+                    return;
+                }
+            }
+        }
+
+        void onError(Throwable e) {
+            iterator.close();
+            // the error of a query canceled by unsubscription is not delivered
+            if (!subscriber.isUnsubscribed()) {
+                Exceptions.throwOrReport(e, subscriber);
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gfx.android.orma.internal;
+
+import com.github.gfx.android.orma.ChangeSet;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded LRU cache of query results keyed by SQL and bind args, which is shared by all the threads.
+ *
+ * Each result depends on the tables its SQL refers to, and it is evicted when a commit modifies any of them.
+ * A result queried before an invalidation is not cached after it, so a concurrent commit never leaves a stale
+ * result in the cache. The size of a result is the number of its rows plus one, so that the cache is bounded by
+ * the number of models it holds.
+ */
+public class QueryCache {
+
+    final int maxSize;
+
+    final Entries entries;
+
+    final AtomicLong hitCount = new AtomicLong();
+
+    final AtomicLong missCount = new AtomicLong();
+
+    final AtomicLong evictionCount = new AtomicLong();
+
+    // guarded by this
+    long generation = 0;
+
+    public QueryCache(@IntRange(from = 1) int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be greater than 0: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.entries = new Entries(maxSize);
+    }
+
+    /**
+     * @param sql      An SQL query
+     * @param bindArgs Arguments bound to {@code sql}
+     * @return The cached result, or {@code null} if it is not cached
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    public <T> T get(@NonNull String sql, @Nullable Object[] bindArgs) {
+        Entry entry = entries.get(new Key(sql, bindArgs));
+        if (entry != null) {
+            hitCount.incrementAndGet();
+            return (T) entry.value;
+        } else {
+            missCount.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * @return The token to pass {@link #put(String, Object[], Collection, Object, int, long)}, which must be taken
+     * before querying
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches {@code value} unless the cache is invalidated after {@code generation} is taken.
+     *
+     * @param sql        An SQL query
+     * @param bindArgs   Arguments bound to {@code sql}
+     * @param tableNames The names of the tables {@code sql} depends on
+     * @param value      The result of the query, which must not be modified after it is cached
+     * @param size       The size of {@code value}
+     * @param generation The value of {@link #generation()} before the query
+     * @return {@code true} if {@code value} is cached
+     */
+    public synchronized boolean put(@NonNull String sql, @Nullable Object[] bindArgs,
+            @NonNull Collection<String> tableNames, @NonNull Object value, @IntRange(from = 1) int size,
+            long generation) {
+        if (this.generation != generation || size > maxSize) {
+            return false;
+        }
+        entries.put(new Key(sql, bindArgs), new Entry(value, tableNames, size));
+        return true;
+    }
+
+    /**
+     * Evicts the results which depend on the tables modified by {@code changes}.
+     *
+     * @param changes Changes committed
+     */
+    public synchronized void invalidate(@NonNull ChangeSet changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        generation++;
+        for (Map.Entry<Key, Entry> entry : entries.snapshot().entrySet()) {
+            if (!Collections.disjoint(entry.getValue().tableNames, changes.getTableNames())) {
+                entries.remove(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Evicts all the results.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The total size of the results in the cache
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    public long missCount() {
+        return missCount.get();
+    }
+
+    public long evictionCount() {
+        return evictionCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "QueryCache{" +
+                "maxSize=" + maxSize +
+                ", size=" + size() +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                '}';
+    }
+
+    static class Key {
+
+        final String sql;
+
+        final Object[] bindArgs;
+
+        final int hashCode;
+
+        Key(String sql, @Nullable Object[] bindArgs) {
+            this.sql = sql;
+            this.bindArgs = bindArgs != null ? bindArgs.clone() : new Object[0];
+            this.hashCode = 31 * sql.hashCode() + Arrays.deepHashCode(this.bindArgs);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return sql.equals(key.sql) && Arrays.deepEquals(bindArgs, key.bindArgs);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    static class Entry {
+
+        final Object value;
+
+        final Collection<String> tableNames;
+
+        final int size;
+
+        Entry(Object value, Collection<String> tableNames, int size) {
+            this.value = value;
+            this.tableNames = tableNames;
+            this.size = size;
+        }
+    }
+
+    class Entries extends LruCache<Key, Entry> {
+
+        boolean clearing = false;
+
+        Entries(int maxSize) {
+            super(maxSize);
+        }
+
+        void clear() {
+            clearing = true;
+            try {
+                evictAll();
+            } finally {
+                clearing = false;
+            }
+        }
+
+        @Override
+        protected int sizeOf(Key key, Entry value) {
+            return value.size;
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, Key key, Entry oldValue, Entry newValue) {
+            if (evicted && !clearing) {
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+}
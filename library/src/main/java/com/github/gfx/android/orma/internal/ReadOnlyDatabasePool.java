@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.gfx.android.orma.internal;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of read-only {@link SQLiteDatabase}s on a database file, each of which has a connection of its own.
+ *
+ * A read transaction on its own connection holds a snapshot under WAL without blocking the writer, which
+ * {@link SQLiteDatabase} doesn't support before Android 15: its transactions always run on the primary connection.
+ * A database is used by a thread at a time, between {@link #acquire()} and {@link #release(SQLiteDatabase)}.
+ */
+public class ReadOnlyDatabasePool implements Closeable {
+
+    final String path;
+
+    final int maxIdle;
+
+    final ArrayDeque<SQLiteDatabase> idle = new ArrayDeque<>();
+
+    boolean closed = false;
+
+    public ReadOnlyDatabasePool(@NonNull String path, int maxIdle) {
+        this.path = path;
+        this.maxIdle = maxIdle;
+    }
+
+    @NonNull
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return An idle database, or a newly opened one
+     */
+    @NonNull
+    public SQLiteDatabase acquire() {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("ReadOnlyDatabasePool is closed");
+            }
+            SQLiteDatabase db = idle.poll();
+            if (db != null) {
+                return db;
+            }
+        }
+        return SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY);
+    }
+
+    /**
+     * Returns {@code db} to the pool, or closes it if the pool has enough idle ones.
+     *
+     * @param db A database returned by {@link #acquire()}
+     */
+    public void release(@NonNull SQLiteDatabase db) {
+        synchronized (this) {
+            if (!closed && idle.size() < maxIdle) {
+                idle.push(db);
+                return;
+            }
+        }
+        db.close();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (SQLiteDatabase db : idle) {
+            db.close();
+        }
+        idle.clear();
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gfx.android.orma.internal;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.util.LruCache;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded LRU pool of compiled {@link SQLiteStatement}s keyed by SQL, which is shared by all the threads.
+ *
+ * {@code SQLiteStatement} is not thread-safe, so a statement is owned by the caller of
+ * {@link #acquire(SQLiteDatabase, String)} until it is passed to {@link #release(SQLiteStatement)}. Only idle
+ * statements are cached and evicted, so a statement is never closed while it is in use, even if the same thread
+ * acquires other statements in the meantime.
+ */
+public class StatementCache {
+
+    final int maxSize;
+
+    final AtomicLong hitCount = new AtomicLong();
+
+    final AtomicLong missCount = new AtomicLong();
+
+    final AtomicLong evictionCount = new AtomicLong();
+
+    // guarded by this
+    final Entries entries;
+
+    // guarded by this
+    final Map<SQLiteStatement, Lease> leases = new IdentityHashMap<>();
+
+    // guarded by this
+    SQLiteDatabase db;
+
+    // guarded by this
+    long generation = 0;
+
+    public StatementCache(@IntRange(from = 1) int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be greater than 0: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.entries = new Entries(maxSize);
+    }
+
+    /**
+     * Takes an idle statement for {@code sql} from the cache, or compiles a new one.
+     * Cached statements for another database instance, e.g. one closed by
+     * {@link android.database.sqlite.SQLiteOpenHelper#close()}, are discarded.
+     *
+     * @param db  A database to compile the statement
+     * @param sql An SQL statement
+     * @return A compiled statement which must be passed to {@link #release(SQLiteStatement)} instead of closed
+     */
+    @NonNull
+    public SQLiteStatement acquire(@NonNull SQLiteDatabase db, @NonNull String sql) {
+        SQLiteStatement statement;
+        long generation;
+        synchronized (this) {
+            if (this.db != db) {
+                clear();
+                this.db = db;
+            }
+            statement = entries.remove(sql);
+            generation = this.generation;
+            if (statement != null) {
+                leases.put(statement, new Lease(sql, generation));
+            }
+        }
+
+        if (statement != null) {
+            hitCount.incrementAndGet();
+            return statement;
+        }
+
+        missCount.incrementAndGet();
+        // compiling may wait for the primary connection, so it must not hold the lock
+        statement = db.compileStatement(sql);
+        synchronized (this) {
+            leases.put(statement, new Lease(sql, generation));
+        }
+        return statement;
+    }
+
+    /**
+     * Clears the bindings of {@code statement} and returns it to the cache. It is closed instead if the cache is
+     * cleared while it is in use, or if another statement for the same SQL is already cached.
+     *
+     * @param statement A statement returned by {@link #acquire(SQLiteDatabase, String)}
+     */
+    public void release(@NonNull SQLiteStatement statement) {
+        statement.clearBindings();
+        boolean cached = false;
+        synchronized (this) {
+            Lease lease = leases.remove(statement);
+            if (lease == null) {
+                throw new IllegalStateException("Not acquired from the cache: " + statement);
+            }
+            if (lease.generation == generation && entries.get(lease.sql) == null) {
+                entries.put(lease.sql, statement);
+                cached = true;
+            }
+        }
+        if (!cached) {
+            statement.close();
+        }
+    }
+
+    /**
+     * Closes all the idle statements. Statements in use are closed when they are released.
+     */
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    public long missCount() {
+        return missCount.get();
+    }
+
+    public long evictionCount() {
+        return evictionCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "StatementCache{" +
+                "maxSize=" + maxSize +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                '}';
+    }
+
+    static class Lease {
+
+        final String sql;
+
+        final long generation;
+
+        Lease(String sql, long generation) {
+            this.sql = sql;
+            this.generation = generation;
+        }
+    }
+
+    class Entries extends LruCache<String, SQLiteStatement> {
+
+        boolean clearing = false;
+
+        Entries(int maxSize) {
+            super(maxSize);
+        }
+
+        void clear() {
+            clearing = true;
+            try {
+                evictAll();
+            } finally {
+                clearing = false;
+            }
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, String key, SQLiteStatement oldValue, SQLiteStatement newValue) {
+            if (evicted && !clearing) {
+                evictionCount.incrementAndGet();
+            }
+            if (evicted) {
+                // statements taken by acquire() are removed without eviction
+                oldValue.close();
+            }
+        }
+    }
+}
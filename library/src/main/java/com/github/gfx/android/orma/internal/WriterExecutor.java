@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015 FUJI Goro (gfx).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.gfx.android.orma.internal;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+
+/**
+ * An {@link Executor} for writes, which wraps a serial executor.
+ *
+ * A command submitted from a command running on this executor runs immediately in the same thread,
+ * so waiting for a write inside another write, e.g. {@code toBlocking()} in a transaction task, doesn't deadlock.
+ */
+public class WriterExecutor implements Executor {
+
+    final Executor executor;
+
+    final ThreadLocal<Boolean> running = new ThreadLocal<>();
+
+    /**
+     * @param executor A serial executor, e.g. {@link java.util.concurrent.Executors#newSingleThreadExecutor()}
+     */
+    public WriterExecutor(@NonNull Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        if (isWriterThread()) {
+            command.run();
+            return;
+        }
+        executeLater(command);
+    }
+
+    /**
+     * Queues {@code command} even if it is called in the writer thread, e.g. to run it after the transaction
+     * in progress.
+     *
+     * @param command A command to run
+     */
+    public void executeLater(@NonNull final Runnable command) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                running.set(Boolean.TRUE);
+                try {
+                    command.run();
+                } finally {
+                    running.remove();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return {@code true} if the current thread is running a command of this executor
+     */
+    public boolean isWriterThread() {
+        return running.get() != null;
+    }
+}
@@ -213,6 +213,16 @@ public class ModelSpecTest {
         assertThat(model.longValue, is(4L));
         assertThat(model.floatValue, is(1.14f));
         assertThat(model.doubleValue, is(3.14));
+
+        assertThat(db.selectFromModelWithPrimitives().pluckLongValue(), is(new long[]{4L}));
+        assertThat(db.selectFromModelWithPrimitives().pluckByteValue(), is(new long[]{1L}));
+        assertThat(db.selectFromModelWithPrimitives().pluckDoubleValue(), is(new double[]{3.14}));
+
+        assertThat(db.selectFromModelWithPrimitives().maxIntValue(), is(3L));
+        assertThat(db.selectFromModelWithPrimitives().sumShortValue(), is(2L));
+        assertThat(db.selectFromModelWithPrimitives().minDoubleValue(), is(3.14));
+        assertThat(db.selectFromModelWithPrimitives().sumDoubleValue(), is(3.14));
+        assertThat(db.selectFromModelWithPrimitives().avgLongValue(), is(4.0));
     }
 
     @Test
@@ -17,6 +17,8 @@ package com.github.gfx.android.orma.test;
 
 import com.github.gfx.android.orma.AccessThreadConstraint;
 import com.github.gfx.android.orma.ModelFactory;
+import com.github.gfx.android.orma.internal.OrmaCursor;
+import com.github.gfx.android.orma.internal.StatementCache;
 import com.github.gfx.android.orma.test.model.Author;
 import com.github.gfx.android.orma.test.model.OrmaDatabase;
 
@@ -26,6 +28,8 @@ import org.junit.runner.RunWith;
 
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 import android.support.annotation.NonNull;
 import android.support.test.InstrumentationRegistry;
@@ -93,6 +97,91 @@ public class OrmaDatabaseTest {
         assertThat(db.getConnection().getDatabaseName(), is(NAME));
     }
 
+    @Test
+    public void testStatementCacheEviction() throws Exception {
+        OrmaDatabase db = OrmaDatabase.builder(getContext())
+                .name(null)
+                .statementCacheSize(1)
+                .tryParsingSql(false)
+                .build();
+
+        StatementCache cache = db.getConnection().getStatementCache();
+        assertThat(cache.maxSize(), is(1));
+
+        db.prepareInsertIntoAuthor().execute(new ModelFactory<Author>() {
+            @NonNull
+            @Override
+            public Author call() {
+                Author author = new Author();
+                author.name = "Jack and Jill";
+                return author;
+            }
+        });
+        long evictions = cache.evictionCount();
+
+        db.deleteFromAuthor().execute();
+        assertThat(cache.evictionCount(), is(evictions + 1));
+        assertThat(db.selectFromAuthor().count(), is(0));
+    }
+
+    @Test
+    public void testStatementCacheKeepsStatementsInUse() throws Exception {
+        OrmaDatabase db = OrmaDatabase.builder(getContext())
+                .name(null)
+                .statementCacheSize(1)
+                .tryParsingSql(false)
+                .build();
+
+        final StatementCache cache = db.getConnection().getStatementCache();
+        final SQLiteDatabase sqliteDatabase = db.getConnection().getWritableDatabase();
+
+        SQLiteStatement outer = cache.acquire(sqliteDatabase, "DELETE FROM Author WHERE name = ?");
+        for (int i = 0; i < 3; i++) {
+            // evicts each other while the outer statement is in use
+            SQLiteStatement inner = cache.acquire(sqliteDatabase, "DELETE FROM Author WHERE name = 'inner" + i + "'");
+            inner.executeUpdateDelete();
+            cache.release(inner);
+        }
+        outer.bindString(1, "outer");
+        assertThat(outer.executeUpdateDelete(), is(0));
+        cache.release(outer);
+
+        // the released statement is shared by other threads
+        long hits = cache.hitCount();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteStatement statement = cache.acquire(sqliteDatabase, "DELETE FROM Author WHERE name = ?");
+                cache.release(statement);
+            }
+        });
+        thread.start();
+        thread.join();
+        assertThat(cache.hitCount(), is(hits + 1));
+    }
+
+    @Test
+    public void testCursorOptions() throws Exception {
+        OrmaDatabase db = OrmaDatabase.builder(getContext())
+                .name(null)
+                .cursorWindowSize(512 * 1024)
+                .cursorPrefetch(true)
+                .tryParsingSql(false)
+                .build();
+
+        assertThat(db.getConnection().getCursorWindowSize(), is(512 * 1024L));
+        assertThat(db.getConnection().getCursorPrefetch(), is(true));
+
+        long fills = db.getConnection().getCursorWindowFillCount();
+        OrmaCursor cursor = (OrmaCursor) db.selectFromAuthor().execute();
+        try {
+            assertThat(cursor.getWindowFillCount(), is(1));
+            assertThat(db.getConnection().getCursorWindowFillCount(), is(fills + 1));
+        } finally {
+            cursor.close();
+        }
+    }
+
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     @Test
     public void testCreateInstanceWithWriteAheadLogging() throws Exception {
@@ -15,33 +15,65 @@
  */
 package com.github.gfx.android.orma.test;
 
+import com.github.gfx.android.orma.BufferedInserter;
+import com.github.gfx.android.orma.ColumnDef;
 import com.github.gfx.android.orma.Inserter;
+import com.github.gfx.android.orma.LongConsumer;
 import com.github.gfx.android.orma.ModelFactory;
+import com.github.gfx.android.orma.OrmaConnection;
 import com.github.gfx.android.orma.SingleAssociation;
 import com.github.gfx.android.orma.TransactionTask;
+import com.github.gfx.android.orma.WritePriority;
 import com.github.gfx.android.orma.annotation.OnConflict;
 import com.github.gfx.android.orma.exception.InvalidStatementException;
 import com.github.gfx.android.orma.exception.NoValueException;
+import com.github.gfx.android.orma.exception.QueryTimeoutException;
 import com.github.gfx.android.orma.exception.TransactionAbortException;
+import com.github.gfx.android.orma.internal.CancellationSignals;
+import com.github.gfx.android.orma.internal.EntityCache;
+import com.github.gfx.android.orma.internal.GroupCommitExecutor;
+import com.github.gfx.android.orma.internal.OrmaCursor;
+import com.github.gfx.android.orma.internal.OrmaIterator;
+import com.github.gfx.android.orma.internal.QueryCache;
+import com.github.gfx.android.orma.internal.StatementCache;
 import com.github.gfx.android.orma.test.model.Author;
+import com.github.gfx.android.orma.test.model.Author_Schema;
 import com.github.gfx.android.orma.test.model.Author_Selector;
 import com.github.gfx.android.orma.test.model.Book;
+import com.github.gfx.android.orma.test.model.Book_Schema;
 import com.github.gfx.android.orma.test.model.Book_Selector;
+import com.github.gfx.android.orma.test.model.ModelWithBlob;
+import com.github.gfx.android.orma.test.model.ModelWithBlob_Schema;
+import com.github.gfx.android.orma.test.model.ModelWithBlob_Selector;
+import com.github.gfx.android.orma.test.model.ModelWithDirectAssociation;
+import com.github.gfx.android.orma.test.model.ModelWithDirectAssociation_Schema;
+import com.github.gfx.android.orma.test.model.ModelWithSetterConstructor;
+import com.github.gfx.android.orma.test.model.ModelWithSetterConstructor_Schema;
 import com.github.gfx.android.orma.test.model.OrmaDatabase;
 import com.github.gfx.android.orma.test.model.Publisher;
+import com.github.gfx.android.orma.test.model.PublisherSchema;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteException;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import rx.Single;
@@ -113,6 +145,35 @@ public class QueryTest {
         assertThat(db.selectFromBook().empty(), is(false));
     }
 
+    @Test
+    public void exists() throws Exception {
+        assertThat(db.selectFromBook().exists(), is(true));
+        assertThat(db.selectFromBook().titleEq("friday").exists(), is(true));
+        assertThat(db.selectFromBook().titleEq("nothing").exists(), is(false));
+        assertThat(db.selectFromBook().titleEq("nothing").isEmpty(), is(true));
+        assertThat(db.selectFromBook().limit(1).offset(1).exists(), is(true));
+        assertThat(db.selectFromBook().limit(1).offset(2).exists(), is(false));
+        assertThat(db.selectFromBook().groupBy("title").having("COUNT(*) > 1").exists(), is(false));
+    }
+
+    @Test
+    public void existingIds() throws Exception {
+        List<Book> books = db.selectFromBook().toList();
+        long today = books.get(0).bookId;
+        long friday = books.get(1).bookId;
+
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 2500; id++) {
+            ids.add(today + friday + id);
+        }
+        ids.add(friday);
+        ids.add(today);
+
+        assertThat(db.relationOfBook().existingIds(ids), containsInAnyOrder(today, friday));
+        assertThat(db.relationOfBook().titleEq("today").existingIds(ids), contains(today));
+        assertThat(db.relationOfBook().existingIds(new ArrayList<Long>()).isEmpty(), is(true));
+    }
+
     @Test
     public void countAsObservable() throws Exception {
         assertThat(db.selectFromBook().countAsObservable().toBlocking().single(), is(2));
@@ -164,6 +225,93 @@ public class QueryTest {
         assertThat(books.get(1).content, is("apple"));
     }
 
+    void insertManyBooks(int n) {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Book book = new Book();
+            book.title = "book" + (i % 7);
+            book.content = String.valueOf(i);
+            book.publisher = SingleAssociation.id(publisher.id);
+            books.add(book);
+        }
+        db.prepareInsertIntoBook().executeAll(books);
+    }
+
+    List<String> iterateContents(Iterable<Book> iterable) {
+        List<String> contents = new ArrayList<>();
+        for (Book book : iterable) {
+            contents.add(book.content);
+        }
+        return contents;
+    }
+
+    List<String> contentsOf(List<Book> books) {
+        List<String> contents = new ArrayList<>();
+        for (Book book : books) {
+            contents.add(book.content);
+        }
+        return contents;
+    }
+
+    @Test
+    public void iterableOverBatches() throws Exception {
+        insertManyBooks(4500);
+
+        List<String> contents = iterateContents(db.selectFromBook());
+        assertThat(contents, hasSize(4502));
+        assertThat(contents, is(contentsOf(db.selectFromBook().toList())));
+    }
+
+    @Test
+    public void iterableOverBatchesOrderedByIndexedColumn() throws Exception {
+        insertManyBooks(4500);
+
+        Book_Selector asc = db.selectFromBook().orderByTitleAsc();
+        assertThat(iterateContents(asc), is(contentsOf(asc.orderBy("_rowid_").toList())));
+
+        Book_Selector desc = db.selectFromBook().orderByTitleDesc();
+        assertThat(iterateContents(desc), is(contentsOf(desc.orderBy("_rowid_ DESC").toList())));
+    }
+
+    @Test
+    public void iterableOverBatchesWithConditions() throws Exception {
+        insertManyBooks(4500);
+
+        Book_Selector selector = db.selectFromBook().or().titleEq("book1").titleEq("book2").orderByTitleAsc();
+        List<String> contents = iterateContents(selector);
+        assertThat(contents, hasSize(selector.count()));
+        assertThat(contents, is(contentsOf(selector.orderBy("_rowid_").toList())));
+    }
+
+    @Test
+    public void iterableOverBatchesWithLimitAndOffset() throws Exception {
+        insertManyBooks(4500);
+
+        List<String> contents = iterateContents(db.selectFromBook().limit(3000).offset(1000));
+        assertThat(contents, hasSize(3000));
+        assertThat(contents.get(0), is(String.valueOf(998)));
+    }
+
+    @Test
+    public void iterableWithRawOrderingStreamsSingleCursor() throws Exception {
+        insertManyBooks(4500);
+
+        Book_Selector selector = db.selectFromBook().orderBy("content DESC");
+        assertThat(iterateContents(selector), is(contentsOf(selector.toList())));
+    }
+
+    @Test
+    public void iteratorCloseOnEarlyExit() throws Exception {
+        OrmaIterator<Book> iterator = db.selectFromBook().iterator();
+        try {
+            assertThat(iterator.hasNext(), is(true));
+            assertThat(iterator.next().title, is("today"));
+        } finally {
+            iterator.close();
+        }
+        assertThat(iterator.hasNext(), is(false));
+    }
+
     @Test
     public void value() throws Exception {
         Book book = db.selectFromBook().value();
@@ -221,6 +369,190 @@ public class QueryTest {
         cursor.close();
     }
 
+    @Test
+    public void executeWithCursorOptions() throws Exception {
+        Book_Selector selector = db.selectFromBook().cursorWindowSize(4096);
+        assertThat(selector.getCursorWindowSize(), is(4096L));
+        assertThat(selector.clone().getCursorWindowSize(), is(4096L));
+
+        OrmaCursor cursor = (OrmaCursor) selector.execute();
+        try {
+            assertThat(cursor.getWindowFillCount(), is(0));
+            assertThat(cursor.moveToFirst(), is(true));
+            assertThat(cursor.getWindowFillCount(), is(1));
+            assertThat(cursor.moveToLast(), is(true));
+            assertThat(cursor.getWindowFillCount(), is(1));
+        } finally {
+            cursor.close();
+        }
+
+        cursor = (OrmaCursor) db.selectFromBook().prefetch(true).execute();
+        try {
+            assertThat(cursor.getWindowFillCount(), is(1));
+            assertThat(cursor.getCount(), is(2));
+            assertThat(cursor.getWindowFillCount(), is(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void selectColumns() throws Exception {
+        List<Book> books = db.selectFromBook()
+                .select(Book_Schema.title, Book_Schema.bookId)
+                .orderByTitleDesc()
+                .toList();
+        assertThat(books, hasSize(2));
+        assertThat(books.get(0).title, is("today"));
+        assertThat(books.get(0).bookId, is(db.selectFromBook().titleEq("today").value().bookId));
+        assertThat(books.get(0).content, is(nullValue()));
+        assertThat(books.get(0).publisher, is(nullValue()));
+        assertThat(books.get(1).title, is("friday"));
+    }
+
+    @Test
+    public void selectColumnsForValueAndIterator() throws Exception {
+        Book_Selector selector = db.selectFromBook().select(Book_Schema.content).titleEq("friday");
+
+        Book book = selector.value();
+        assertThat(book.content, is("apple"));
+        assertThat(book.title, is(nullValue()));
+
+        for (Book b : selector.clone()) {
+            assertThat(b.content, is("apple"));
+            assertThat(b.title, is(nullValue()));
+        }
+
+        Cursor cursor = selector.execute();
+        try {
+            assertThat(cursor.getColumnCount(), is(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void selectColumnsForSetterConstructor() throws Exception {
+        db.prepareInsertIntoModelWithSetterConstructor().execute(new ModelWithSetterConstructor(0, "key", "value"));
+
+        ModelWithSetterConstructor model = db.selectFromModelWithSetterConstructor()
+                .select(ModelWithSetterConstructor_Schema.value)
+                .value();
+        assertThat(model.value, is("value"));
+        assertThat(model.key, is(nullValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void selectColumnsOfAnotherSchema() throws Exception {
+        @SuppressWarnings("unchecked")
+        ColumnDef<Book, ?> column = (ColumnDef) Author_Schema.name;
+        db.selectFromBook().select(column);
+    }
+
+    @Test
+    public void pluck() throws Exception {
+        assertThat(db.selectFromBook().orderByTitleAsc().pluckTitle(), is(new String[]{"friday", "today"}));
+        assertThat(db.selectFromBook().titleEq("today").pluckContent(), is(new String[]{"milk, banana"}));
+        assertThat(db.selectFromBook().titleEq("nothing").pluckContent(), is(new String[0]));
+
+        List<Book> books = db.selectFromBook().toList();
+        assertThat(db.selectFromBook().pluckBookId(), is(new long[]{books.get(0).bookId, books.get(1).bookId}));
+        assertThat(db.selectFromBook().pluckPublisher(), is(new long[]{publisher.id, publisher.id}));
+    }
+
+    @Test
+    public void forEachLongColumn() throws Exception {
+        final List<Long> ids = new ArrayList<>();
+        db.selectFromBook().forEachBookId(new LongConsumer() {
+            @Override
+            public void accept(long value) {
+                ids.add(value);
+            }
+        });
+
+        List<Book> books = db.selectFromBook().toList();
+        assertThat(ids, contains(books.get(0).bookId, books.get(1).bookId));
+    }
+
+    @Test
+    public void aggregates() throws Exception {
+        List<Book> books = db.selectFromBook().toList();
+        long id0 = books.get(0).bookId;
+        long id1 = books.get(1).bookId;
+
+        assertThat(db.selectFromBook().minBookId(), is(Math.min(id0, id1)));
+        assertThat(db.selectFromBook().maxBookId(), is(Math.max(id0, id1)));
+        assertThat(db.selectFromBook().sumBookId(), is(id0 + id1));
+        assertThat(db.selectFromBook().avgBookId(), is((id0 + id1) / 2.0));
+
+        assertThat(db.selectFromBook().minTitle(), is("friday"));
+        assertThat(db.selectFromBook().maxTitle(), is("today"));
+        assertThat(db.selectFromBook().titleEq("friday").maxContent(), is("apple"));
+    }
+
+    @Test
+    public void aggregatesForNoRows() throws Exception {
+        Book_Selector selector = db.selectFromBook().titleEq("nothing");
+
+        assertThat(selector.minBookId(), is(nullValue()));
+        assertThat(selector.maxTitle(), is(nullValue()));
+        assertThat(selector.avgBookId(), is(nullValue()));
+        assertThat(selector.sumBookId(), is(0L));
+    }
+
+    @Test
+    public void aggregatesWithLimitAndGroupBy() throws Exception {
+        db.prepareInsertIntoBook().executeAll(someBooks());
+        List<Book> books = db.selectFromBook().toList();
+
+        assertThat(db.selectFromBook().limit(2).sumBookId(), is(books.get(0).bookId + books.get(1).bookId));
+        assertThat(db.selectFromBook().groupBy("title").pluckTitle(), is(new String[]{"friday", "today"}));
+        assertThat(db.selectFromBook().groupBy("title").maxTitle(), is("today"));
+        assertThat(db.selectFromBook().groupBy("title").having("COUNT(*) > 1").maxTitle(), is("friday"));
+
+        // a value for each group is aggregated
+        long sum = 0;
+        for (Book book : books) {
+            sum += book.bookId;
+        }
+        assertThat(db.selectFromBook().groupBy("bookId").sumBookId(), is(sum));
+        assertThat(db.selectFromBook().groupBy("bookId").having("bookId > ?", books.get(0).bookId).minBookId(),
+                is(books.get(1).bookId));
+    }
+
+    @Test
+    public void aggregatesOfImplicitPrimaryKeyWithLimit() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            ModelWithBlob model = new ModelWithBlob();
+            model.blob = new byte[]{(byte) i};
+            db.insertIntoModelWithBlob(model);
+        }
+
+        RowIdSelector selector = new RowIdSelector(db);
+        selector.orderBy(ModelWithBlob_Schema._rowid_.orderInAscending()).limit(2);
+        assertThat(selector.sumOfRowIds(), is(3L));
+        assertThat(selector.maxRowId(), is(2L));
+
+        selector = new RowIdSelector(db);
+        selector.groupBy("_rowid_");
+        assertThat(selector.sumOfRowIds(), is(6L));
+    }
+
+    static class RowIdSelector extends ModelWithBlob_Selector {
+
+        RowIdSelector(OrmaDatabase db) {
+            super(db.getConnection(), ModelWithBlob_Schema.INSTANCE);
+        }
+
+        long sumOfRowIds() {
+            return sumAsLong(ModelWithBlob_Schema._rowid_);
+        }
+
+        Long maxRowId() {
+            return aggregateAsLong("MAX", ModelWithBlob_Schema._rowid_);
+        }
+    }
+
     @Test
     public void executeWithColumns() throws Exception {
         Cursor cursor = db.selectFromBook().executeWithColumns("max(bookId) as max_id, min(bookId) as min_id");
@@ -272,6 +604,23 @@ public class QueryTest {
         assertThat(books.get(0).content, is("apple"));
     }
 
+    @Test
+    public void whereWithTypedArgs() throws Exception {
+        // expressions have no column affinity, so arguments must be bound as numbers
+        assertThat(db.selectFromBook().where("bookId + 0 = ?", 1).count(), is(1));
+        assertThat(db.selectFromBook().where("bookId * 1.5 > ?", 2.0).count(), is(1));
+        assertThat(db.selectFromBook().where("bookId > ?", 1L).count(), is(1));
+        assertThat(db.selectFromBook().where("? IS NULL", (Object) null).count(), is(2));
+        assertThat(db.selectFromBook().where("typeof(?) = 'blob'", (Object) new byte[]{1}).count(), is(2));
+
+        db.prepareInsertIntoBook().executeAll(someBooks());
+        assertThat(db.selectFromBook().groupBy("title").having("COUNT(*) > ?", 1).pluckTitle(),
+                is(new String[]{"friday"}));
+
+        assertThat(db.updateBook().where("bookId + 0 = ?", 1).content("modified").execute(), is(1));
+        assertThat(db.deleteFromBook().where("bookId + 0 = ?", 1).execute(), is(1));
+    }
+
     @Test
     public void whereConjunctionAnd() throws Exception {
         List<Book> books = db.selectFromBook()
@@ -517,6 +866,61 @@ public class QueryTest {
         assertThat(db.selectFromBook().count(), is(2));
     }
 
+    @Test
+    public void transactionSyncNested() throws Exception {
+        final List<Exception> errors = new ArrayList<>();
+
+        db.transactionSync(new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                for (final Book book : someBooks()) {
+                    db.transactionSync(new TransactionTask() {
+                        @Override
+                        public void execute() throws Exception {
+                            db.insertIntoBook(book);
+                            if (book.content.equals("apple2")) {
+                                throw new RuntimeException("skip!");
+                            }
+                        }
+
+                        @Override
+                        public void onError(@NonNull Exception exception) {
+                            errors.add(exception);
+                        }
+                    });
+                }
+            }
+        });
+
+        assertThat(errors, hasSize(1));
+        assertThat(errors.get(0).getMessage(), is("skip!"));
+        assertThat(db.selectFromBook().count(), is(2 + 4));
+        assertThat(db.selectFromBook().where("content = ?", "apple2").exists(), is(false));
+    }
+
+    @Test
+    public void transactionSyncNestedAbort() throws Exception {
+        try {
+            db.transactionSync(new TransactionTask() {
+                @Override
+                public void execute() throws Exception {
+                    db.prepareInsertIntoBook().executeAll(someBooks());
+                    db.transactionSync(new TransactionTask() {
+                        @Override
+                        public void execute() throws Exception {
+                            throw new RuntimeException("abort!");
+                        }
+                    });
+                }
+            });
+            fail("not reached");
+        } catch (TransactionAbortException e) {
+            assertThat(e.getCause(), instanceOf(TransactionAbortException.class));
+        }
+
+        assertThat(db.selectFromBook().count(), is(2));
+    }
+
     @Test
     public void transactionAsyncSuccess() throws Exception {
         final CountDownLatch latch = new CountDownLatch(1);
@@ -556,6 +960,903 @@ public class QueryTest {
         assertThat(db.selectFromBook().count(), is(2));
     }
 
+    @Test
+    public void transactionAsyncGroupCommit() throws Exception {
+        final OrmaDatabase db = OrmaDatabase.builder(InstrumentationRegistry.getTargetContext())
+                .name(null)
+                .tryParsingSql(false)
+                .groupCommitWindowMillis(1000)
+                .groupCommitMaxBatchSize(5)
+                .build();
+        final CountDownLatch failed = new CountDownLatch(1);
+
+        for (int i = 0; i < 5; i++) {
+            final String name = "author" + i;
+            db.transactionAsync(new TransactionTask() {
+                @Override
+                public void execute() throws Exception {
+                    Author author = new Author();
+                    author.name = name;
+                    db.insertIntoAuthor(author);
+                    if (name.equals("author2")) {
+                        throw new RuntimeException("abort!");
+                    }
+                }
+
+                @Override
+                public void onError(@NonNull Exception exception) {
+                    assertThat(exception.getMessage(), is("abort!"));
+                    failed.countDown();
+                }
+            });
+        }
+
+        assertThat(failed.await(1, TimeUnit.SECONDS), is(true));
+        GroupCommitExecutor writer = db.getConnection().getGroupCommitExecutor();
+        assertThat(writer.commitCount(), is(1L));
+        assertThat(writer.taskCount(), is(5L));
+        assertThat(writer.failedTaskCount(), is(1L));
+        assertThat(writer.maxBatchSize(), is(5L));
+        assertThat(writer.averageBatchSize(), is(5.0));
+        assertThat(writer.maxQueueLatencyMillis(), is(lessThan(1000.0)));
+
+        assertThat(db.selectFromAuthor().count(), is(4));
+        assertThat(db.selectFromAuthor().nameEq("author2").exists(), is(false));
+    }
+
+    @Test
+    public void transactionAsyncOnErrorThrows() throws Exception {
+        final List<Throwable> uncaught = Collections.synchronizedList(new ArrayList<Throwable>());
+        final ExecutorService service = Executors.newSingleThreadExecutor();
+        final OrmaDatabase db = OrmaDatabase.builder(InstrumentationRegistry.getTargetContext())
+                .name(null)
+                .tryParsingSql(false)
+                .writerExecutor(new Executor() {
+                    @Override
+                    public void execute(@NonNull final Runnable command) {
+                        service.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    command.run();
+                                } catch (Throwable e) {
+                                    uncaught.add(e);
+                                }
+                            }
+                        });
+                    }
+                })
+                .build();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        db.transactionAsync(new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                throw new RuntimeException("abort!");
+            }
+
+            @Override
+            public void onError(@NonNull Exception exception) {
+                throw new RuntimeException("callback");
+            }
+        });
+        db.transactionAsync(new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                Author author = new Author();
+                author.name = "foo";
+                db.insertIntoAuthor(author);
+                done.countDown();
+            }
+        });
+
+        assertThat(done.await(1, TimeUnit.SECONDS), is(true));
+        service.shutdown();
+        assertThat(service.awaitTermination(1, TimeUnit.SECONDS), is(true));
+        assertThat(uncaught.size(), is(0));
+        assertThat(db.getConnection().getGroupCommitExecutor().failedTaskCount(), is(1L));
+    }
+
+    @Test
+    public void bufferedInserter() throws Exception {
+        BufferedInserter<Author> inserter = db.prepareInsertIntoAuthor().buffered()
+                .flushSize(3)
+                .flushIntervalMillis(0)
+                .build();
+
+        for (int i = 0; i < 2; i++) {
+            Author author = new Author();
+            author.name = "author" + i;
+            inserter.execute(author);
+        }
+        assertThat(inserter.size(), is(2));
+        assertThat(db.selectFromAuthor().count(), is(0));
+
+        Author author = new Author();
+        author.name = "author2";
+        inserter.execute(author);
+        // the writer runs commands in order, so the flush has finished when this command runs
+        final CountDownLatch flushed = new CountDownLatch(1);
+        db.getConnection().getWriterExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                flushed.countDown();
+            }
+        });
+        assertThat(flushed.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(inserter.flushCount(), is(1L));
+        assertThat(db.selectFromAuthor().count(), is(3));
+
+        author.name = "author3";
+        inserter.execute(author);
+        inserter.close();
+        assertThat(db.selectFromAuthor().count(), is(4));
+    }
+
+    @Test
+    public void bufferedInserterFlushesWithMultiRowStatements() throws Exception {
+        BufferedInserter<Author> inserter = db.prepareInsertIntoAuthor().buffered()
+                .flushIntervalMillis(0)
+                .build();
+        for (int i = 0; i < 5; i++) {
+            Author author = new Author();
+            author.name = "author" + i;
+            inserter.execute(author);
+        }
+
+        StatementCache cache = db.getConnection().getStatementCache();
+        long acquired = cache.hitCount() + cache.missCount();
+        inserter.flush();
+        assertThat(cache.hitCount() + cache.missCount(), is(acquired + 1));
+        assertThat(db.selectFromAuthor().count(), is(5));
+        inserter.close();
+    }
+
+    @Test
+    public void bufferedInserterWithJournal() throws Exception {
+        File journal = File.createTempFile("orma", ".journal");
+        assertThat(journal.delete(), is(true));
+
+        BufferedInserter<Author> inserter = db.prepareInsertIntoAuthor().buffered()
+                .flushIntervalMillis(0)
+                .journal(journal)
+                .build();
+        for (int i = 0; i < 2; i++) {
+            Author author = new Author();
+            author.name = "author" + i;
+            author.note = i == 0 ? null : "note";
+            inserter.execute(author);
+        }
+        assertThat(journal.exists(), is(true));
+
+        // as if the process died without flushing
+        BufferedInserter<Author> recovered = db.prepareInsertIntoAuthor().buffered()
+                .flushIntervalMillis(0)
+                .journal(journal)
+                .build();
+        assertThat(recovered.insertedCount(), is(2L));
+        assertThat(db.selectFromAuthor().count(), is(2));
+        assertThat(db.selectFromAuthor().nameEq("author1").value().note, is("note"));
+        assertThat(journal.exists(), is(false));
+        recovered.close();
+    }
+
+    @Test
+    public void bufferedInserterRejectsRows() throws Exception {
+        File journal = File.createTempFile("orma", ".journal");
+        assertThat(journal.delete(), is(true));
+
+        Author duplicate = new Author();
+        duplicate.name = "author1";
+        db.insertIntoAuthor(duplicate);
+
+        BufferedInserter<Author> inserter = db.prepareInsertIntoAuthor().buffered()
+                .flushIntervalMillis(0)
+                .journal(journal)
+                .build();
+        for (int i = 0; i < 4; i++) {
+            Author author = new Author();
+            author.name = "author" + i;
+            inserter.execute(author);
+        }
+        // as if the process died without flushing
+        BufferedInserter<Author> recovered = db.prepareInsertIntoAuthor().buffered()
+                .flushIntervalMillis(0)
+                .journal(journal)
+                .build();
+        assertThat(recovered.rejectedCount(), is(1L));
+        assertThat(recovered.insertedCount(), is(3L));
+        assertThat(db.selectFromAuthor().count(), is(4));
+        assertThat(journal.exists(), is(false));
+
+        // rejected rows are not retried
+        inserter.flush();
+        assertThat(inserter.rejectedCount(), is(4L));
+        assertThat(inserter.failedFlushCount(), is(0L));
+        assertThat(inserter.size(), is(0));
+        inserter.close();
+        recovered.close();
+    }
+
+    @Test
+    public void bufferedInserterRetriesFailedFlush() throws Exception {
+        File journal = File.createTempFile("orma", ".journal");
+        assertThat(journal.delete(), is(true));
+
+        BufferedInserter<Author> inserter = db.prepareInsertIntoAuthor().buffered()
+                .flushIntervalMillis(0)
+                .journal(journal)
+                .build();
+        for (int i = 0; i < 2; i++) {
+            Author author = new Author();
+            author.name = "author" + i;
+            inserter.execute(author);
+        }
+
+        // fails with "no such table", which doesn't depend on the rows
+        String table = Author_Schema.INSTANCE.getEscapedTableName();
+        db.getConnection().execSQL("ALTER TABLE " + table + " RENAME TO `tmp`");
+        try {
+            inserter.flush();
+            fail("not reached");
+        } catch (TransactionAbortException e) {
+            // ok
+        }
+        assertThat(inserter.failedFlushCount(), is(1L));
+        assertThat(inserter.size(), is(2));
+        assertThat(new File(journal.getPath() + ".1").exists(), is(true));
+
+        db.getConnection().execSQL("ALTER TABLE `tmp` RENAME TO " + table);
+        inserter.flush();
+        assertThat(inserter.size(), is(0));
+        assertThat(inserter.insertedCount(), is(2L));
+        assertThat(db.selectFromAuthor().count(), is(2));
+        assertThat(new File(journal.getPath() + ".1").exists(), is(false));
+        inserter.close();
+    }
+
+    @Test
+    public void bufferedInserterInRolledBackTransaction() throws Exception {
+        File journal = File.createTempFile("orma", ".journal");
+        assertThat(journal.delete(), is(true));
+
+        final BufferedInserter<Author> inserter = db.prepareInsertIntoAuthor().buffered()
+                .capacity(2)
+                .flushSize(1)
+                .flushIntervalMillis(0)
+                .journal(journal)
+                .build();
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+
+        // in a thread other than the writer, which waits for the transaction to flush the rows
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    db.transactionSync(new TransactionTask() {
+                        @Override
+                        public void execute() throws Exception {
+                            for (int i = 0; i < 2; i++) {
+                                Author author = new Author();
+                                author.name = "author" + i;
+                                inserter.execute(author);
+                            }
+                            try {
+                                Author author = new Author();
+                                author.name = "author2";
+                                inserter.execute(author);
+                            } catch (IllegalStateException e) {
+                                results.add("full");
+                            }
+                            throw new Exception("rollback");
+                        }
+                    });
+                } catch (TransactionAbortException e) {
+                    results.add("rolled back");
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        assertThat(results, contains("full", "rolled back"));
+
+        // the rows are flushed after the rollback
+        inserter.close();
+        assertThat(db.selectFromAuthor().count(), is(2));
+        assertThat(inserter.insertedCount(), is(2L));
+        assertThat(new File(journal.getPath() + ".1").exists(), is(false));
+    }
+
+    @Test
+    public void entityCache() throws Exception {
+        final OrmaDatabase db = OrmaDatabase.builder(InstrumentationRegistry.getTargetContext())
+                .name(null)
+                .tryParsingSql(false)
+                .entityCache(Author_Schema.INSTANCE, 10)
+                .entityCache(PublisherSchema.INSTANCE, 10)
+                .build();
+        final OrmaConnection conn = db.getConnection();
+        EntityCache<Author> cache = conn.getEntityCache(Author_Schema.INSTANCE);
+        assertThat(conn.getEntityCache(Book_Schema.INSTANCE), is(nullValue()));
+
+        Author author = new Author();
+        author.name = "foo";
+        db.insertIntoAuthor(author);
+
+        Author cached = conn.querySingleByPrimaryKey(Author_Schema.INSTANCE, "foo");
+        assertThat(cache.missCount(), is(1L));
+        assertThat(conn.querySingleByPrimaryKey(Author_Schema.INSTANCE, "foo"), is(sameInstance(cached)));
+        assertThat(db.relationOfAuthor().get(0), is(sameInstance(cached)));
+        assertThat(cache.hitCount(), is(2L));
+        assertThat(cache.size(), is(1));
+
+        db.updateAuthor().nameEq("foo").note("updated").execute();
+        assertThat(cache.size(), is(0));
+        assertThat(conn.querySingleByPrimaryKey(Author_Schema.INSTANCE, "foo").note, is("updated"));
+
+        // transactions see their own changes without the cache
+        db.transactionSync(new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                db.updateAuthor().nameEq("foo").note("in transaction").execute();
+                assertThat(conn.querySingleByPrimaryKey(Author_Schema.INSTANCE, "foo").note, is("in transaction"));
+            }
+        });
+        assertThat(conn.querySingleByPrimaryKey(Author_Schema.INSTANCE, "foo").note, is("in transaction"));
+        assertThat(cache.hitRate(), is(closeTo(2.0 / 5.0, 0.001)));
+
+        // associations are resolved via the cache
+        Publisher publisher = new Publisher();
+        publisher.name = "foo";
+        publisher.startedYear = 2015;
+        publisher.startedMonth = 12;
+        publisher.id = db.insertIntoPublisher(publisher);
+        for (int i = 0; i < 2; i++) {
+            Book book = new Book();
+            book.title = "book" + i;
+            book.content = "content";
+            book.publisher = SingleAssociation.just(publisher.id, publisher);
+            db.insertIntoBook(book);
+        }
+        List<Book> books = db.selectFromBook().toList();
+        assertThat(books.get(0).publisher.value(), is(sameInstance(books.get(1).publisher.value())));
+        assertThat(conn.getEntityCache(PublisherSchema.INSTANCE).hitCount(), is(1L));
+    }
+
+    @Test
+    public void entityCacheWithDirectAssociation() throws Exception {
+        OrmaDatabase db = OrmaDatabase.builder(InstrumentationRegistry.getTargetContext())
+                .name(null)
+                .tryParsingSql(false)
+                .entityCache(ModelWithDirectAssociation_Schema.INSTANCE, 10)
+                .build();
+        OrmaConnection conn = db.getConnection();
+        EntityCache<ModelWithDirectAssociation> cache = conn.getEntityCache(ModelWithDirectAssociation_Schema.INSTANCE);
+
+        Publisher publisher = new Publisher();
+        publisher.name = "foo";
+        publisher.startedYear = 2015;
+        publisher.startedMonth = 12;
+        publisher.id = db.insertIntoPublisher(publisher);
+
+        Book book = new Book();
+        book.title = "today";
+        book.content = "milk, banana";
+        book.publisher = SingleAssociation.id(publisher.id);
+        book.bookId = db.insertIntoBook(book);
+
+        ModelWithDirectAssociation model = new ModelWithDirectAssociation();
+        model.title = "first";
+        model.book = book;
+        long rowId = db.insertIntoModelWithDirectAssociation(model);
+
+        assertThat(conn.querySingleByPrimaryKey(ModelWithDirectAssociation_Schema.INSTANCE, rowId).book.title,
+                is("today"));
+        assertThat(cache.size(), is(1));
+
+        // a change on the joined table evicts the models which embed its rows
+        db.updateBook().bookIdEq(book.bookId).title("updated").execute();
+        assertThat(cache.size(), is(0));
+        assertThat(conn.querySingleByPrimaryKey(ModelWithDirectAssociation_Schema.INSTANCE, rowId).book.title,
+                is("updated"));
+
+        // a change on an unrelated table doesn't
+        db.updatePublisher().idEq(publisher.id).name("updated").execute();
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void prefetchSingleAssociation() throws Exception {
+        Publisher other = new Publisher();
+        other.name = "other";
+        other.startedYear = 2016;
+        other.startedMonth = 1;
+        other.id = db.insertIntoPublisher(other);
+
+        Book book = new Book();
+        book.title = "monday";
+        book.content = "coffee";
+        book.publisher = SingleAssociation.id(other.id);
+        db.insertIntoBook(book);
+
+        List<Book> books = db.selectFromBook().with(Book_Schema.publisher).toList();
+        List<Book> lazyBooks = db.selectFromBook().toList();
+        assertThat(books, hasSize(3));
+
+        // the publishers are loaded with the books
+        db.deleteFromPublisher().execute();
+        assertThat(books.get(0).publisher.value().name, is("foo bar"));
+        assertThat(books.get(1).publisher.value(), is(sameInstance(books.get(0).publisher.value())));
+        assertThat(books.get(2).publisher.value().name, is("other"));
+
+        try {
+            lazyBooks.get(0).publisher.value();
+            fail("not reached");
+        } catch (NoValueException e) {
+            assertThat(e.getMessage(), containsString("publishers"));
+        }
+    }
+
+    @Test
+    public void prefetchSingleAssociationOfSchemas() throws Exception {
+        OrmaConnection conn = db.getConnection();
+        long[] rowIds = new long[2];
+        for (int i = 0; i < rowIds.length; i++) {
+            ModelWithBlob model = new ModelWithBlob();
+            model.blob = new byte[]{(byte) i};
+            rowIds[i] = db.insertIntoModelWithBlob(model);
+        }
+        Publisher publisher = db.selectFromPublisher().value();
+
+        // targets with the implicit primary key and with an explicit one
+        List<SingleAssociation<?>> associations = new ArrayList<>();
+        for (long rowId : rowIds) {
+            associations.add(new SingleAssociation<>(conn, ModelWithBlob_Schema.INSTANCE, rowId));
+        }
+        associations.add(new SingleAssociation<>(conn, PublisherSchema.INSTANCE, publisher.id));
+        associations.add(null);
+        SingleAssociation.prefetch(conn, associations);
+
+        db.deleteFromModelWithBlob().execute();
+        db.deleteFromBook().execute();
+        db.deleteFromPublisher().execute();
+        assertThat(((ModelWithBlob) associations.get(0).value()).blob, is(new byte[]{0}));
+        assertThat(((ModelWithBlob) associations.get(1).value()).blob, is(new byte[]{1}));
+        assertThat(((Publisher) associations.get(2).value()).name, is(publisher.name));
+    }
+
+    @Test
+    public void prefetchSingleAssociationWithQueryCache() throws Exception {
+        OrmaDatabase db = OrmaDatabase.builder(InstrumentationRegistry.getTargetContext())
+                .name(null)
+                .tryParsingSql(false)
+                .queryCache(100, true)
+                .build();
+        Publisher publisher = new Publisher();
+        publisher.name = "foo";
+        publisher.startedYear = 2015;
+        publisher.startedMonth = 12;
+        publisher.id = db.insertIntoPublisher(publisher);
+
+        Book book = new Book();
+        book.title = "today";
+        book.content = "milk, banana";
+        book.publisher = SingleAssociation.id(publisher.id);
+        db.insertIntoBook(book);
+
+        List<Book> cached = db.selectFromBook().toList();
+        List<Book> books = db.selectFromBook().with(Book_Schema.publisher).toList();
+        assertThat(books.get(0), is(not(sameInstance(cached.get(0)))));
+        assertThat(db.getConnection().getQueryCache().hitCount(), is(0L));
+
+        // the cached models are not resolved with the prefetched ones, which would be stale
+        db.updatePublisher().idEq(publisher.id).name("updated").execute();
+        assertThat(books.get(0).publisher.value().name, is("foo"));
+        assertThat(db.selectFromBook().toList().get(0).publisher.value().name, is("updated"));
+        assertThat(db.selectFromBook().with(Book_Schema.publisher).toList().get(0).publisher.value().name,
+                is("updated"));
+    }
+
+    @Test
+    public void directAssociation() throws Exception {
+        Book today = db.selectFromBook().titleEq("today").value();
+        Book friday = db.selectFromBook().titleEq("friday").value();
+
+        ModelWithDirectAssociation model = new ModelWithDirectAssociation();
+        model.title = "first";
+        model.book = today;
+        model.sequel = friday;
+        db.insertIntoModelWithDirectAssociation(model);
+
+        model = new ModelWithDirectAssociation();
+        model.title = "second";
+        model.book = friday;
+        db.insertIntoModelWithDirectAssociation(model);
+
+        // the books are hydrated from the rows joined with the models
+        List<ModelWithDirectAssociation> models = db.selectFromModelWithDirectAssociation()
+                .orderBy(ModelWithDirectAssociation_Schema.title.orderInAscending())
+                .toList();
+        assertThat(models, hasSize(2));
+        assertThat(models.get(0).book.title, is("today"));
+        assertThat(models.get(0).book.publisher.getId(), is(today.publisher.getId()));
+        assertThat(models.get(0).sequel.title, is("friday"));
+        assertThat(models.get(1).book.bookId, is(friday.bookId));
+        assertThat(models.get(1).sequel, is(nullValue()));
+
+        int n = 0;
+        for (ModelWithDirectAssociation m : db.selectFromModelWithDirectAssociation()) {
+            assertThat(m.book, is(notNullValue()));
+            n++;
+        }
+        assertThat(n, is(2));
+
+        assertThat(db.selectFromModelWithDirectAssociation().where("title = ?", "second").value().book.title,
+                is("friday"));
+        assertThat(db.selectFromModelWithDirectAssociation().bookEq(friday).count(), is(1));
+
+        db.updateModelWithDirectAssociation().bookEq(friday).sequel(today).execute();
+        assertThat(db.selectFromModelWithDirectAssociation().where("\"sequel.title\" = ?", "today").value().title,
+                is("second"));
+    }
+
+    @Test
+    public void queryCache() throws Exception {
+        OrmaDatabase db = OrmaDatabase.builder(InstrumentationRegistry.getTargetContext())
+                .name(null)
+                .tryParsingSql(false)
+                .queryCache(100)
+                .build();
+        QueryCache cache = db.getConnection().getQueryCache();
+
+        for (int i = 0; i < 3; i++) {
+            Author author = new Author();
+            author.name = "author" + i;
+            db.insertIntoAuthor(author);
+        }
+
+        assertThat(db.selectFromAuthor().count(), is(3));
+        assertThat(cache.missCount(), is(0L));
+
+        assertThat(db.selectFromAuthor().cache(true).count(), is(3));
+        assertThat(db.selectFromAuthor().cache(true).count(), is(3));
+        List<Author> authors = db.selectFromAuthor().cache(true).nameEq("author0").toList();
+        assertThat(db.selectFromAuthor().cache(true).nameEq("author0").toList().get(0),
+                is(sameInstance(authors.get(0))));
+        assertThat(db.selectFromAuthor().cache(true).nameEq("author1").toList().get(0).name, is("author1"));
+        assertThat(cache.hitCount(), is(2L));
+        assertThat(cache.missCount(), is(3L));
+        assertThat(cache.size(), is(5));
+
+        // writes to other tables don't evict the results
+        Publisher publisher = new Publisher();
+        publisher.name = "foo";
+        db.insertIntoPublisher(publisher);
+        assertThat(cache.size(), is(5));
+
+        Author author = new Author();
+        author.name = "author3";
+        db.insertIntoAuthor(author);
+        assertThat(cache.size(), is(0));
+        assertThat(db.selectFromAuthor().cache(true).count(), is(4));
+
+        OrmaDatabase cacheByDefault = OrmaDatabase.builder(InstrumentationRegistry.getTargetContext())
+                .name(null)
+                .tryParsingSql(false)
+                .queryCache(100, true)
+                .build();
+        cacheByDefault.selectFromAuthor().toList();
+        cacheByDefault.selectFromAuthor().cache(false).count();
+        assertThat(cacheByDefault.getConnection().getQueryCache().missCount(), is(1L));
+    }
+
+    @Test
+    public void identityMap() throws Exception {
+        final OrmaDatabase db = OrmaDatabase.builder(InstrumentationRegistry.getTargetContext())
+                .name(null)
+                .tryParsingSql(false)
+                .identityMap(true)
+                .build();
+
+        final Publisher publisher = new Publisher();
+        publisher.name = "foo";
+        publisher.startedYear = 2015;
+        publisher.startedMonth = 12;
+        publisher.id = db.insertIntoPublisher(publisher);
+        for (int i = 0; i < 2; i++) {
+            Book book = new Book();
+            book.title = "book" + i;
+            book.content = "content";
+            book.publisher = SingleAssociation.id(publisher.id);
+            db.insertIntoBook(book);
+        }
+
+        db.transactionSync(new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                List<Book> books = db.selectFromBook().toList();
+                Publisher loaded = books.get(0).publisher.value();
+                assertThat(books.get(1).publisher.value(), is(sameInstance(loaded)));
+                assertThat(db.selectFromPublisher().value(), is(sameInstance(loaded)));
+                assertThat(db.selectFromBook().toList().get(1), is(sameInstance(books.get(1))));
+                assertThat(db.getConnection().getIdentityMap().hitCount(), is(4L));
+
+                // partial models are not shared
+                assertThat(db.selectFromBook().select(Book_Schema.title).value(), is(not(sameInstance(books.get(0)))));
+
+                db.updatePublisher().idEq(publisher.id).name("updated").execute();
+                Publisher updated = books.get(0).publisher.value();
+                assertThat(updated, is(not(sameInstance(loaded))));
+                assertThat(updated.name, is("updated"));
+            }
+        });
+
+        assertThat(db.getConnection().getIdentityMap(), is(nullValue()));
+        assertThat(db.selectFromPublisher().value(), is(not(sameInstance(db.selectFromPublisher().value()))));
+    }
+
+    @Test
+    public void identityMapWithImplicitRowId() throws Exception {
+        final OrmaDatabase db = OrmaDatabase.builder(InstrumentationRegistry.getTargetContext())
+                .name(null)
+                .tryParsingSql(false)
+                .identityMap(true)
+                .build();
+
+        for (int i = 0; i < 2; i++) {
+            ModelWithBlob model = new ModelWithBlob();
+            model.blob = new byte[]{(byte) i};
+            db.insertIntoModelWithBlob(model);
+        }
+
+        db.transactionSync(new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                // the cursor has no primary key, so models are not shared
+                List<ModelWithBlob> models = db.selectFromModelWithBlob().toList();
+                assertThat(models, hasSize(2));
+                assertThat(db.selectFromModelWithBlob().value(), is(not(sameInstance(models.get(0)))));
+                assertThat(db.getConnection().getIdentityMap().hitCount(), is(0L));
+            }
+        });
+    }
+
+    @Test
+    public void identityMapWithDirectAssociation() throws Exception {
+        final OrmaDatabase db = OrmaDatabase.builder(InstrumentationRegistry.getTargetContext())
+                .name(null)
+                .tryParsingSql(false)
+                .identityMap(true)
+                .build();
+        final OrmaConnection conn = db.getConnection();
+
+        Publisher publisher = new Publisher();
+        publisher.name = "foo";
+        publisher.startedYear = 2015;
+        publisher.startedMonth = 12;
+        publisher.id = db.insertIntoPublisher(publisher);
+
+        final Book book = new Book();
+        book.title = "today";
+        book.content = "milk, banana";
+        book.publisher = SingleAssociation.id(publisher.id);
+        book.bookId = db.insertIntoBook(book);
+
+        ModelWithDirectAssociation model = new ModelWithDirectAssociation();
+        model.title = "first";
+        model.book = book;
+        final long rowId = db.insertIntoModelWithDirectAssociation(model);
+
+        db.transactionSync(new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                ModelWithDirectAssociation loaded = conn.querySingleByPrimaryKey(
+                        ModelWithDirectAssociation_Schema.INSTANCE, rowId);
+                assertThat(conn.querySingleByPrimaryKey(ModelWithDirectAssociation_Schema.INSTANCE, rowId),
+                        is(sameInstance(loaded)));
+
+                // a change on the joined table evicts the models which embed its rows
+                db.updateBook().bookIdEq(book.bookId).title("updated").execute();
+                ModelWithDirectAssociation reloaded = conn.querySingleByPrimaryKey(
+                        ModelWithDirectAssociation_Schema.INSTANCE, rowId);
+                assertThat(reloaded, is(not(sameInstance(loaded))));
+                assertThat(reloaded.book.title, is("updated"));
+            }
+        });
+    }
+
+    @Test
+    public void transactionAsyncWithPriority() throws Exception {
+        final OrmaDatabase db = OrmaDatabase.builder(InstrumentationRegistry.getTargetContext())
+                .name(null)
+                .tryParsingSql(false)
+                .build();
+        final CountDownLatch backgroundStarted = new CountDownLatch(1);
+        final CountDownLatch interactiveQueued = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        db.transactionAsync(WritePriority.BACKGROUND, new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                for (int i = 0; i < 3; i++) {
+                    Author author = new Author();
+                    author.name = "background" + i;
+                    db.insertIntoAuthor(author);
+                    events.add(author.name);
+                    if (i == 0) {
+                        backgroundStarted.countDown();
+                        interactiveQueued.await(1, TimeUnit.SECONDS);
+                    }
+                    db.yieldIfContended();
+                }
+            }
+        });
+        db.transactionAsync(WritePriority.BACKGROUND, new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                events.add("background-next");
+                done.countDown();
+            }
+        });
+
+        assertThat(backgroundStarted.await(1, TimeUnit.SECONDS), is(true));
+        db.transactionAsync(new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                assertThat("the first chunk is committed", db.selectFromAuthor().count(), is(1));
+                events.add("interactive");
+            }
+        });
+        interactiveQueued.countDown();
+
+        assertThat(done.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(events, contains("background0", "interactive", "background1", "background2", "background-next"));
+        assertThat(db.selectFromAuthor().count(), is(3));
+    }
+
+    @Test
+    public void readSnapshot() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase("snapshot.db");
+        final OrmaDatabase db = OrmaDatabase.builder(context)
+                .name("snapshot.db")
+                .tryParsingSql(false)
+                .build();
+        Author author = new Author();
+        author.name = "author0";
+        db.insertIntoAuthor(author);
+
+        final CountDownLatch committed = new CountDownLatch(1);
+        final List<Integer> counts = new ArrayList<>();
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                db.transactionSync(new TransactionTask() {
+                    @Override
+                    public void execute() throws Exception {
+                        Author author = new Author();
+                        author.name = "author1";
+                        db.insertIntoAuthor(author);
+                    }
+                });
+                committed.countDown();
+            }
+        });
+
+        try {
+            db.readSnapshot(new TransactionTask() {
+                @Override
+                public void execute() throws Exception {
+                    counts.add(db.selectFromAuthor().count());
+
+                    // the writer commits without waiting for the snapshot
+                    writer.start();
+                    assertThat(committed.await(5, TimeUnit.SECONDS), is(true));
+
+                    counts.add(db.selectFromAuthor().toList().size());
+                }
+            });
+
+            assertThat(counts, contains(1, 1));
+            assertThat(db.selectFromAuthor().count(), is(2));
+        } finally {
+            db.getConnection().close();
+            context.deleteDatabase("snapshot.db");
+        }
+    }
+
+    @Test
+    public void cancellationSignal() throws Exception {
+        CancellationSignal signal = new CancellationSignal();
+        Book_Selector selector = db.selectFromBook().cancellationSignal(signal);
+        assertThat(selector.toList(), hasSize(2));
+
+        signal.cancel();
+        try {
+            selector.toList();
+            fail("not reached");
+        } catch (OperationCanceledException e) {
+            // ok
+        }
+        try {
+            selector.iterator().hasNext();
+            fail("not reached");
+        } catch (OperationCanceledException e) {
+            // ok
+        }
+        assertThat("other selectors are not affected", db.selectFromBook().toList(), hasSize(2));
+    }
+
+    @Test
+    public void queryTimeout() throws Exception {
+        OrmaDatabase db = OrmaDatabase.builder(InstrumentationRegistry.getTargetContext())
+                .name(null)
+                .queryTimeoutMillis(1000)
+                .build();
+        assertThat(db.getConnection().getQueryTimeoutMillis(), is(1000L));
+
+        for (int i = 0; i < 5; i++) {
+            Author author = new Author();
+            author.name = "author" + i;
+            db.insertIntoAuthor(author);
+        }
+        assertThat(db.selectFromAuthor().toList(), hasSize(5));
+        assertThat(db.selectFromAuthor().iterator().next().name, is("author0"));
+    }
+
+    @Test
+    public void queryTimeoutException() throws Exception {
+        final OrmaDatabase db = OrmaDatabase.builder(InstrumentationRegistry.getTargetContext())
+                .name(null)
+                .queryTimeoutMillis(100)
+                .build();
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch unlock = new CountDownLatch(1);
+
+        // an in-memory database has only one connection, which the query waits for until the timeout
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                db.transactionSync(new TransactionTask() {
+                    @Override
+                    public void execute() throws Exception {
+                        locked.countDown();
+                        unlock.await();
+                    }
+                });
+            }
+        });
+        writer.start();
+        assertThat(locked.await(5, TimeUnit.SECONDS), is(true));
+
+        try {
+            db.selectFromAuthor().toList();
+            fail("not reached");
+        } catch (QueryTimeoutException e) {
+            assertThat(e.getCause(), is(instanceOf(OperationCanceledException.class)));
+        } finally {
+            unlock.countDown();
+            writer.join();
+        }
+        assertThat(db.selectFromAuthor().count(), is(0));
+    }
+
+    @Test
+    public void cancellationSignalWithLinkedSignals() throws Exception {
+        CancellationSignal parent = new CancellationSignal();
+        CancellationSignal a = CancellationSignals.link(parent);
+        CancellationSignal b = CancellationSignals.link(parent);
+
+        // a query with the parent signal doesn't take the listener from the linked ones
+        assertThat(db.selectFromBook().cancellationSignal(parent).toList(), hasSize(2));
+
+        parent.cancel();
+        assertThat(a.isCanceled(), is(true));
+        assertThat(b.isCanceled(), is(true));
+        assertThat(CancellationSignals.link(parent).isCanceled(), is(true));
+    }
+
     @Test
     public void transactionNonExclusiveSync() throws Exception {
         Single<Integer> countObservable = Single.create(new Single.OnSubscribe<Integer>() {
@@ -651,6 +1952,35 @@ public class QueryTest {
         assertThat(db.selectFromBook().count(), is(7));
     }
 
+    @Test
+    public void inserterExecuteAllInMultiRowBatches() throws Exception {
+        Inserter<Book> inserter = db.prepareInsertIntoBook();
+        int n = inserter.getRowsPerStatement() * 2 + 3;
+
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Book book = new Book();
+            book.title = "book" + i;
+            book.content = i % 2 == 0 ? null : "content" + i;
+            book.inPrint = i % 3 == 0;
+            book.publisher = SingleAssociation.id(publisher.id);
+            books.add(book);
+        }
+        inserter.executeAll(books);
+
+        assertThat(db.selectFromBook().count(), is(n + 2));
+
+        List<Book> inserted = db.selectFromBook().titleNotIn("today", "friday").orderBy("bookId").toList();
+        assertThat(inserted.size(), is(n));
+        for (int i = 0; i < n; i++) {
+            Book book = inserted.get(i);
+            assertThat(book.title, is("book" + i));
+            assertThat(book.content, is(i % 2 == 0 ? null : "content" + i));
+            assertThat(book.inPrint, is(i % 3 == 0));
+            assertThat(book.publisher.getId(), is(publisher.id));
+        }
+    }
+
     @Test
     public void inserterExecuteModelFactory() throws Exception {
         Inserter<Book> inserter = db.prepareInsertIntoBook();
@@ -670,6 +2000,37 @@ public class QueryTest {
     }
 
 
+    @Test
+    public void inserterSharesCompiledStatements() throws Exception {
+        StatementCache cache = db.getConnection().getStatementCache();
+        long misses = cache.missCount();
+        long hits = cache.hitCount();
+
+        db.prepareInsertIntoBook().executeAll(someBooks());
+        db.prepareInsertIntoBook().executeAll(someBooks());
+
+        // 5 rows are inserted by a statement, which is compiled once
+        assertThat(cache.missCount(), is(misses + 1));
+        assertThat(cache.hitCount(), is(hits + 1));
+        assertThat(db.selectFromBook().count(), is(12));
+    }
+
+    @Test
+    public void deleteAndUpdateShareCompiledStatements() throws Exception {
+        StatementCache cache = db.getConnection().getStatementCache();
+
+        db.updateBook().titleEq("today").content("modified").execute();
+        db.deleteFromBook().titleEq("nothing").execute();
+        long misses = cache.missCount();
+
+        assertThat(db.updateBook().titleEq("friday").content("modified").execute(), is(1));
+        assertThat(db.deleteFromBook().titleEq("today").execute(), is(1));
+
+        assertThat(cache.missCount(), is(misses));
+        assertThat(db.selectFromBook().count(), is(1));
+        assertThat(db.selectFromBook().value().content, is("modified"));
+    }
+
     @Test
     public void reuseCursor() throws Exception {
         List<Book> books = db.selectFromBook().where("title = ?", "today").toList();
@@ -752,4 +2113,13 @@ public class QueryTest {
         assertThat(value, is(1L));
     }
 
+    @Test
+    public void execSQLWithBindArgs() throws Exception {
+        String sql = "UPDATE Book SET content = ? WHERE title = ?";
+        db.getConnection().execSQL(sql, "modified", "today");
+        db.getConnection().execSQL(sql, "modified", "friday");
+
+        assertThat(db.selectFromBook().where("content = ?", "modified").count(), is(2));
+    }
+
 }
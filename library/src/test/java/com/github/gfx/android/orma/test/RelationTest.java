@@ -106,6 +106,13 @@ public class RelationTest {
     @Test
     public void isEmpty() throws Exception {
         assertThat(rel().isEmpty(), is(false));
+        assertThat(rel().nameEq("D").isEmpty(), is(true));
+    }
+
+    @Test
+    public void exists() throws Exception {
+        assertThat(rel().exists(), is(true));
+        assertThat(rel().nameEq("D").exists(), is(false));
     }
 
     @Test
@@ -15,20 +15,45 @@
  */
 package com.github.gfx.android.orma.test;
 
+import com.github.gfx.android.orma.ChangeSet;
+import com.github.gfx.android.orma.Inserter;
 import com.github.gfx.android.orma.ModelFactory;
 import com.github.gfx.android.orma.SingleAssociation;
+import com.github.gfx.android.orma.TransactionTask;
+import com.github.gfx.android.orma.exception.TransactionAbortException;
+import com.github.gfx.android.orma.test.model.Author;
+import com.github.gfx.android.orma.test.model.Author_Schema;
 import com.github.gfx.android.orma.test.model.Book;
+import com.github.gfx.android.orma.test.model.Book_Schema;
+import com.github.gfx.android.orma.test.model.ModelWithDirectAssociation;
 import com.github.gfx.android.orma.test.model.OrmaDatabase;
 import com.github.gfx.android.orma.test.model.Publisher;
+import com.github.gfx.android.orma.test.model.PublisherSchema;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.observers.TestSubscriber;
 
 import static org.hamcrest.MatcherAssert.*;
 import static org.hamcrest.Matchers.*;
@@ -84,6 +109,35 @@ public class RxObservableTest {
         });
     }
 
+    @Test
+    public void blockingObservablesInTransaction() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<Object> results = Collections.synchronizedList(new ArrayList<>());
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                db.transactionSync(new TransactionTask() {
+                    @Override
+                    public void execute() throws Exception {
+                        Author author = new Author();
+                        author.name = "foo";
+                        // runs in this thread, which holds the write lock
+                        results.add(db.prepareInsertIntoAuthor().executeAsObservable(author).toBlocking().value());
+                        // sees the uncommitted row
+                        results.add(db.selectFromAuthor().countAsObservable().toBlocking().single());
+                        results.add(db.deleteFromAuthor().executeAsObservable().toBlocking().value());
+                    }
+                });
+                done.countDown();
+            }
+        }, "non-writer");
+        thread.start();
+
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(results, contains((Object) 1L, 1, 1));
+    }
+
     @Test
     public void relationObservable() throws Exception {
         List<Book> list = db.selectFromBook()
@@ -97,6 +151,39 @@ public class RxObservableTest {
         assertThat(list.get(0).title, is("today"));
     }
 
+    @Test
+    public void selectorObservableWithBackpressure() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            Publisher model = new Publisher();
+            model.name = "publisher" + i;
+            db.insertIntoPublisher(model);
+        }
+
+        TestSubscriber<Publisher> subscriber = new TestSubscriber<>(0);
+        db.selectFromPublisher().executeAsObservable().subscribe(subscriber);
+
+        subscriber.requestMore(3);
+        for (int i = 0; i < 100 && subscriber.getOnNextEvents().size() < 3; i++) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        subscriber.assertValueCount(3);
+        subscriber.assertNoTerminalEvent();
+
+        subscriber.requestMore(Long.MAX_VALUE);
+        subscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        subscriber.assertValueCount(11);
+        subscriber.assertCompleted();
+
+        List<Publisher> publishers = db.selectFromPublisher()
+                .executeAsObservable()
+                .take(2)
+                .toList()
+                .toBlocking()
+                .single();
+        assertThat(publishers, hasSize(2));
+    }
+
     @Test
     public void inserterObservable() throws Exception {
         long rowid = db.prepareInsertIntoBook()
@@ -142,4 +229,302 @@ public class RxObservableTest {
         assertThat(count, is(1));
         assertThat(db.selectFromBook().where("title = ?", "today").valueOrNull(), is(nullValue()));
     }
+
+    @Test
+    public void schedulers() throws Exception {
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        OrmaDatabase db = OrmaDatabase.builder(InstrumentationRegistry.getTargetContext())
+                .name(null)
+                .tryParsingSql(false)
+                .readerExecutor(Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull Runnable r) {
+                        return new Thread(r, "reader");
+                    }
+                }))
+                .writerExecutor(Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull Runnable r) {
+                        return new Thread(r, "writer");
+                    }
+                }))
+                .build();
+
+        Action0 recordThread = new Action0() {
+            @Override
+            public void call() {
+                threads.add(Thread.currentThread().getName());
+            }
+        };
+
+        Publisher publisher = new Publisher();
+        publisher.name = "foo";
+        db.prepareInsertIntoPublisher().executeAsObservable(publisher)
+                .doOnSuccess(new Action1<Long>() {
+                    @Override
+                    public void call(Long id) {
+                        threads.add(Thread.currentThread().getName());
+                    }
+                })
+                .toBlocking()
+                .value();
+        db.selectFromPublisher().executeAsObservable()
+                .doOnCompleted(recordThread)
+                .toBlocking()
+                .single();
+        db.selectFromPublisher().countAsObservable()
+                .doOnCompleted(recordThread)
+                .toBlocking()
+                .single();
+        db.deleteFromPublisher().executeAsObservable()
+                .doOnSuccess(new Action1<Integer>() {
+                    @Override
+                    public void call(Integer count) {
+                        threads.add(Thread.currentThread().getName());
+                    }
+                })
+                .toBlocking()
+                .value();
+
+        assertThat(threads, contains("writer", "reader", "reader", "writer"));
+    }
+
+    @Test
+    public void writeInsideTransactionAsync() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        db.transactionAsync(new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                // waiting for a write on the writer thread doesn't deadlock
+                db.deleteFromBook().executeAsObservable().toBlocking().value();
+                latch.countDown();
+            }
+        });
+
+        assertThat(latch.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(db.selectFromBook().count(), is(0));
+    }
+
+    @Test
+    public void observeTableChanges() throws Exception {
+        final String book = Book_Schema.INSTANCE.getTableName();
+        final String publisher = PublisherSchema.INSTANCE.getTableName();
+        final List<Set<String>> changes = new ArrayList<>();
+        Subscription subscription = db.getConnection().observeTableChanges()
+                .subscribe(new Action1<Set<String>>() {
+                    @Override
+                    public void call(Set<String> tableNames) {
+                        changes.add(tableNames);
+                    }
+                });
+
+        db.updateBook().content("changed").execute();
+        db.updateBook().titleEq("nothing").content("changed").execute();
+
+        db.transactionSync(new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                db.deleteFromBook().execute();
+                db.deleteFromPublisher().execute();
+            }
+        });
+
+        db.transactionSync(new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                db.getConnection().execSQL("INSERT INTO " + publisher + " (name, started_year, started_month) VALUES (?, ?, ?)",
+                        "foo", 2000, 1);
+                db.transactionSync(new TransactionTask() {
+                    @Override
+                    public void execute() throws Exception {
+                        db.deleteFromAuthor().execute();
+                        db.getConnection().execSQL("DELETE FROM " + book);
+                        throw new RuntimeException("rollback");
+                    }
+
+                    @Override
+                    public void onError(@NonNull Exception exception) {
+                    }
+                });
+            }
+        });
+
+        try {
+            db.transactionSync(new TransactionTask() {
+                @Override
+                public void execute() throws Exception {
+                    db.deleteFromPublisher().execute();
+                    throw new RuntimeException("rollback");
+                }
+            });
+        } catch (TransactionAbortException e) {
+            // ok
+        }
+
+        subscription.unsubscribe();
+
+        assertThat(changes, contains(
+                Collections.singleton(book),
+                new HashSet<>(Arrays.asList(book, publisher)),
+                Collections.singleton(publisher)));
+    }
+
+    @Test
+    public void selectorObserve() throws Exception {
+        final LinkedBlockingQueue<Integer> sizes = new LinkedBlockingQueue<>();
+        Subscription subscription = db.selectFromBook()
+                .observe()
+                .subscribe(new Action1<List<Book>>() {
+                    @Override
+                    public void call(List<Book> books) {
+                        sizes.add(books.size());
+                    }
+                });
+
+        assertThat(sizes.poll(1, TimeUnit.SECONDS), is(2));
+
+        db.transactionSync(new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                db.deleteFromBook().titleEq("today").execute();
+                db.deleteFromBook().titleEq("friday").execute();
+            }
+        });
+        assertThat(sizes.poll(1, TimeUnit.SECONDS), is(0));
+
+        Publisher publisher = new Publisher();
+        publisher.name = "other";
+        db.insertIntoPublisher(publisher);
+        assertThat("changes of other tables are ignored", sizes.poll(100, TimeUnit.MILLISECONDS), is(nullValue()));
+
+        subscription.unsubscribe();
+    }
+
+    @Test
+    public void selectorObserveJoinedTables() throws Exception {
+        Book today = db.selectFromBook().titleEq("today").value();
+        ModelWithDirectAssociation model = new ModelWithDirectAssociation();
+        model.title = "first";
+        model.book = today;
+        db.insertIntoModelWithDirectAssociation(model);
+
+        final LinkedBlockingQueue<String> titles = new LinkedBlockingQueue<>();
+        Subscription subscription = db.selectFromModelWithDirectAssociation()
+                .observe()
+                .subscribe(new Action1<List<ModelWithDirectAssociation>>() {
+                    @Override
+                    public void call(List<ModelWithDirectAssociation> models) {
+                        titles.add(models.get(0).book.title);
+                    }
+                });
+
+        assertThat(titles.poll(1, TimeUnit.SECONDS), is("today"));
+
+        db.updateBook().bookIdEq(today.bookId).title("updated").execute();
+        assertThat("changes of joined tables are observed", titles.poll(1, TimeUnit.SECONDS), is("updated"));
+
+        subscription.unsubscribe();
+    }
+
+    @Test
+    public void observeRowChanges() throws Exception {
+        final OrmaDatabase db = OrmaDatabase.builder(InstrumentationRegistry.getTargetContext())
+                .name(null)
+                .tryParsingSql(false)
+                .rowChangeFeed(true)
+                .build();
+        final String author = Author_Schema.INSTANCE.getTableName();
+        final String publisher = PublisherSchema.INSTANCE.getTableName();
+        final List<ChangeSet> changes = new ArrayList<>();
+        Subscription subscription = db.getConnection().observeRowChanges()
+                .subscribe(new Action1<ChangeSet>() {
+                    @Override
+                    public void call(ChangeSet changeSet) {
+                        changes.add(changeSet);
+                    }
+                });
+
+        for (String name : Arrays.asList("foo", "bar", "baz")) {
+            Author model = new Author();
+            model.name = name;
+            db.insertIntoAuthor(model);
+        }
+        assertThat(changes, hasSize(3));
+        assertThat(changes.get(0).getInsertedKeys(author), contains((Object) "foo"));
+        changes.clear();
+
+        db.transactionSync(new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                db.updateAuthor().nameEq("foo").note("updated").execute();
+                db.deleteFromAuthor().nameEq("bar").execute();
+
+                Author model = new Author();
+                model.name = "qux";
+                db.insertIntoAuthor(model);
+                db.updateAuthor().nameEq("qux").note("updated").execute();
+
+                db.deleteFromAuthor().nameEq("baz").execute();
+                model.name = "baz";
+                db.insertIntoAuthor(model);
+            }
+        });
+        assertThat(changes, hasSize(1));
+        ChangeSet changeSet = changes.get(0);
+        assertThat(changeSet.hasRowChanges(author), is(true));
+        assertThat(changeSet.getInsertedKeys(author), contains((Object) "qux"));
+        assertThat(changeSet.getUpdatedKeys(author), containsInAnyOrder((Object) "foo", "baz"));
+        assertThat(changeSet.getDeletedKeys(author), contains((Object) "bar"));
+        changes.clear();
+
+        final Inserter<Publisher> inserter = db.prepareInsertIntoPublisher();
+        final List<Publisher> publishers = new ArrayList<>();
+        for (int i = 0; i < inserter.getRowsPerStatement() + 1; i++) {
+            Publisher model = new Publisher();
+            model.name = "publisher" + i;
+            publishers.add(model);
+        }
+        db.transactionSync(new TransactionTask() {
+            @Override
+            public void execute() throws Exception {
+                inserter.executeAll(publishers);
+            }
+        });
+        assertThat(changes, hasSize(1));
+        Set<Object> keys = changes.get(0).getInsertedKeys(publisher);
+        assertThat(keys, hasSize(publishers.size()));
+        assertThat(keys, hasItems((Object) 1L, (long) publishers.size()));
+        changes.clear();
+
+        db.getConnection().execSQL("DELETE FROM " + publisher);
+        assertThat(changes, hasSize(1));
+        assertThat(changes.get(0).hasRowChanges(publisher), is(false));
+
+        subscription.unsubscribe();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void observeRowChangesIsImmutable() throws Exception {
+        final OrmaDatabase db = OrmaDatabase.builder(InstrumentationRegistry.getTargetContext())
+                .name(null)
+                .tryParsingSql(false)
+                .rowChangeFeed(true)
+                .build();
+        final List<ChangeSet> changes = new ArrayList<>();
+        db.getConnection().observeRowChanges()
+                .subscribe(new Action1<ChangeSet>() {
+                    @Override
+                    public void call(ChangeSet changeSet) {
+                        changes.add(changeSet);
+                    }
+                });
+
+        Author model = new Author();
+        model.name = "foo";
+        db.insertIntoAuthor(model);
+
+        assertThat(changes, hasSize(1));
+        // a ChangeSet is shared by all the subscribers
+        changes.get(0).getInsertedKeys(Author_Schema.INSTANCE.getTableName()).clear();
+    }
 }
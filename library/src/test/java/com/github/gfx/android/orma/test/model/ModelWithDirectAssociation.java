@@ -19,12 +19,18 @@ package com.github.gfx.android.orma.test.model;
 import com.github.gfx.android.orma.annotation.Column;
 import com.github.gfx.android.orma.annotation.Table;
 
+import android.support.annotation.Nullable;
+
 @Table
 public class ModelWithDirectAssociation {
 
     @Column
     public String title;
 
-    //@Column // TODO direct association
+    @Column(indexed = true)
     public Book book;
+
+    @Nullable
+    @Column
+    public Book sequel;
 }
@@ -34,4 +34,12 @@ public class AssociationDefinition {
         ParameterizedTypeName pt = (ParameterizedTypeName) type;
         return new AssociationDefinition(pt.rawType, pt.typeArguments.get(0));
     }
+
+    /**
+     * @param type A model type which is stored as the primary key of the model
+     * @return A direct association, whose {@code associationType} is the model type itself
+     */
+    public static AssociationDefinition createDirect(TypeName type) {
+        return new AssociationDefinition((ClassName) type, type);
+    }
 }
@@ -203,11 +203,30 @@ public class ColumnDefinition {
     public AssociationDefinition getAssociation() {
         if (Types.isSingleAssociation(type)) {
             return AssociationDefinition.create(type);
+        } else if (isDirectAssociation()) {
+            return AssociationDefinition.createDirect(type);
         }
         return null;
 
     }
 
+    public boolean isDirectAssociation() {
+        return Types.isDirectAssociation(schema.context, type);
+    }
+
+    /**
+     * @return The primary key of the model of the direct association, which is stored in the column
+     */
+    public ColumnDefinition getAssociatedPrimaryKey() {
+        SchemaDefinition associatedSchema = schema.context.getSchemaDef(type);
+        ColumnDefinition primaryKey = associatedSchema.getPrimaryKey();
+        if (primaryKey == null) {
+            throw new ProcessingException("Direct association requires the @PrimaryKey field",
+                    associatedSchema.getElement());
+        }
+        return primaryKey;
+    }
+
     public TypeName getType() {
         return type;
     }
@@ -221,7 +240,9 @@ public class ColumnDefinition {
     }
 
     public TypeName getSerializedType() {
-        if (typeAdapter != null) {
+        if (isDirectAssociation()) {
+            return getAssociatedPrimaryKey().getSerializedType();
+        } else if (typeAdapter != null) {
             return Types.asUnboxType(typeAdapter.serializedType);
         } else {
             return getUnboxType();
@@ -229,7 +250,9 @@ public class ColumnDefinition {
     }
 
     public TypeName getSerializedBoxType() {
-        if (typeAdapter != null) {
+        if (isDirectAssociation()) {
+            return getAssociatedPrimaryKey().getSerializedBoxType();
+        } else if (typeAdapter != null) {
             return typeAdapter.serializedType.box();
         } else {
             return type.box();
@@ -237,6 +260,9 @@ public class ColumnDefinition {
     }
 
     public String getStorageType() {
+        if (isDirectAssociation()) {
+            return getAssociatedPrimaryKey().getStorageType();
+        }
         return storageType;
     }
 
@@ -278,7 +304,9 @@ public class ColumnDefinition {
         CodeBlock getColumnExpr = CodeBlock.builder()
                 .add("$L.$L", modelExpr, getter != null ? getter.getSimpleName() + "()" : name)
                 .build();
-        if (needsTypeAdapter()) {
+        if (isDirectAssociation()) {
+            return buildSerializeExpr(connectionExpr, getColumnExpr);
+        } else if (needsTypeAdapter()) {
             return CodeBlock.builder()
                     .add(buildSerializeExpr(connectionExpr, getColumnExpr))
                     .build();
@@ -302,7 +330,10 @@ public class ColumnDefinition {
     }
 
     public CodeBlock buildSerializeExpr(String connectionExpr, CodeBlock valueExpr) {
-        if (typeAdapter != null) {
+        if (isDirectAssociation()) {
+            // direct associations are stored as the primary keys of the models
+            return getAssociatedPrimaryKey().buildSerializedColumnExpr(connectionExpr, valueExpr.toString());
+        } else if (typeAdapter != null) {
             // static type adapters
             return CodeBlock.builder()
                     .add("$T.$L($L)", typeAdapter.typeAdapterImpl, typeAdapter.getSerializerName(), valueExpr)
@@ -346,6 +377,6 @@ public class ColumnDefinition {
     }
 
     public boolean needsTypeAdapter() {
-        return Types.needsTypeAdapter(getUnboxType());
+        return !isDirectAssociation() && Types.needsTypeAdapter(getUnboxType());
     }
 }
@@ -58,7 +58,8 @@ public class ConditionQueryHelpers {
 
     void buildConditionHelpersForEachColumn(List<MethodSpec> methodSpecs, ColumnDefinition column) {
 
-        boolean isAssociation = Types.isSingleAssociation(column.getType());
+        // SingleAssociation<T> or a direct association
+        boolean isAssociation = column.getAssociation() != null;
 
         TypeName type = isAssociation ? column.getAssociation().modelType : column.getType();
 
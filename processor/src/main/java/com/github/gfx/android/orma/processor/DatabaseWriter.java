@@ -271,6 +271,21 @@ public class DatabaseWriter extends BaseWriter {
                         .build()
         );
 
+        methodSpecs.add(
+                MethodSpec.methodBuilder("transactionAsync")
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(
+                                ParameterSpec.builder(Types.WritePriority, "priority")
+                                        .addAnnotation(Specs.nonNullAnnotationSpec())
+                                        .build())
+                        .addParameter(
+                                ParameterSpec.builder(Types.TransactionTask, "task")
+                                        .addAnnotation(Specs.nonNullAnnotationSpec())
+                                        .build())
+                        .addStatement("$L.transactionAsync(priority, task)", connection)
+                        .build()
+        );
+
         methodSpecs.add(
                 MethodSpec.methodBuilder("transactionNonExclusiveSync")
                         .addException(Types.TransactionAbortException)
@@ -294,6 +309,41 @@ public class DatabaseWriter extends BaseWriter {
                         .build()
         );
 
+        methodSpecs.add(
+                MethodSpec.methodBuilder("transactionNonExclusiveAsync")
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(
+                                ParameterSpec.builder(Types.WritePriority, "priority")
+                                        .addAnnotation(Specs.nonNullAnnotationSpec())
+                                        .build())
+                        .addParameter(
+                                ParameterSpec.builder(Types.TransactionTask, "task")
+                                        .addAnnotation(Specs.nonNullAnnotationSpec())
+                                        .build())
+                        .addStatement("$L.transactionNonExclusiveAsync(priority, task)", connection)
+                        .build()
+        );
+
+        methodSpecs.add(
+                MethodSpec.methodBuilder("yieldIfContended")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(boolean.class)
+                        .addStatement("return $L.yieldIfContended()", connection)
+                        .build()
+        );
+
+        methodSpecs.add(
+                MethodSpec.methodBuilder("readSnapshot")
+                        .addException(Types.TransactionAbortException)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(
+                                ParameterSpec.builder(Types.TransactionTask, "task")
+                                        .addAnnotation(Specs.nonNullAnnotationSpec())
+                                        .build())
+                        .addStatement("$L.readSnapshot(task)", connection)
+                        .build()
+        );
+
         context.schemaMap.values().forEach(schema -> {
             String simpleModelName = schema.getModelClassName().simpleName();
             String schemaInstance = "schema" + simpleModelName;
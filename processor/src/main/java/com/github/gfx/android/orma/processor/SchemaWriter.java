@@ -254,11 +254,12 @@ public class SchemaWriter extends BaseWriter {
 
         builder.add("{\n").indent();
 
-        List<ColumnDefinition> columns = schema.getColumns();
+        // includes the aliased columns of direct associations
+        List<String> columnNames = sql.buildSelectColumnNames(schema);
 
-        for (int i = 0; i < columns.size(); i++) {
-            builder.add("$S", '"' + columns.get(i).columnName + '"');
-            if ((i + 1) != columns.size()) {
+        for (int i = 0; i < columnNames.size(); i++) {
+            builder.add("$S", sql.quoteIdentifier(columnNames.get(i)));
+            if ((i + 1) != columnNames.size()) {
                 builder.add(",\n");
             } else {
                 builder.add("\n");
@@ -305,6 +306,15 @@ public class SchemaWriter extends BaseWriter {
                         .build()
         );
 
+        methodSpecs.add(
+                MethodSpec.methodBuilder("getSelectFromTableClause")
+                        .addAnnotations(overrideAndNonNull)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(Types.String)
+                        .addStatement("return $S", sql.buildSelectFromTableClause(schema))
+                        .build()
+        );
+
         methodSpecs.add(
                 MethodSpec.methodBuilder("getPrimaryKey")
                         .addAnnotations(overrideAndNonNull)
@@ -428,10 +438,49 @@ public class SchemaWriter extends BaseWriter {
                                 ParameterSpec.builder(Types.Cursor, "cursor")
                                         .addAnnotation(Specs.nonNullAnnotationSpec())
                                         .build())
+                        .addStatement("return newModelFromCursor(conn, cursor, 0)")
+                        .build()
+        );
+
+        methodSpecs.add(
+                MethodSpec.methodBuilder("newModelFromCursor")
+                        .addAnnotations(overrideAndNonNull)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(schema.getModelClassName())
+                        .addParameter(
+                                ParameterSpec.builder(Types.OrmaConnection, "conn")
+                                        .addAnnotation(Specs.nonNullAnnotationSpec())
+                                        .build())
+                        .addParameter(
+                                ParameterSpec.builder(Types.Cursor, "cursor")
+                                        .addAnnotation(Specs.nonNullAnnotationSpec())
+                                        .build())
+                        .addParameter(int.class, offset)
                         .addCode(buildNewModelFromCursor())
                         .build()
         );
 
+        methodSpecs.add(
+                MethodSpec.methodBuilder("newModelFromCursor")
+                        .addAnnotations(overrideAndNonNull)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(schema.getModelClassName())
+                        .addParameter(
+                                ParameterSpec.builder(Types.OrmaConnection, "conn")
+                                        .addAnnotation(Specs.nonNullAnnotationSpec())
+                                        .build())
+                        .addParameter(
+                                ParameterSpec.builder(Types.Cursor, "cursor")
+                                        .addAnnotation(Specs.nonNullAnnotationSpec())
+                                        .build())
+                        .addParameter(
+                                ParameterSpec.builder(ArrayTypeName.of(TypeName.INT), "positions")
+                                        .addAnnotation(Specs.nonNullAnnotationSpec())
+                                        .build())
+                        .addCode(buildNewPartialModelFromCursor())
+                        .build()
+        );
+
         return methodSpecs;
     }
 
@@ -537,18 +586,50 @@ public class SchemaWriter extends BaseWriter {
     }
 
     private CodeBlock buildPopulateValuesIntoCursor(Function<ColumnDefinition, CodeBlock> lhsBaseGen) {
+        return buildPopulateValuesIntoCursor(lhsBaseGen, index -> offset + " + " + index, false);
+    }
+
+    /**
+     * @param lhsBaseGen A generator of the left-hand side prefix
+     * @param positionGen A generator of the cursor position expression for the index of a column
+     * @param partial If {@code true}, each column is populated only if its position is not {@code -1}
+     */
+    private CodeBlock buildPopulateValuesIntoCursor(Function<ColumnDefinition, CodeBlock> lhsBaseGen,
+            Function<Integer, String> positionGen, boolean partial) {
         CodeBlock.Builder builder = CodeBlock.builder();
 
         List<ColumnDefinition> columns = schema.getColumns();
-        for (int i = 0; i < columns.size(); i++) {
-            ColumnDefinition c = columns.get(i);
+        // the columns of direct associations are joined after the columns of the schema
+        int joinedPosition = columns.size();
+        for (int index = 0; index < columns.size(); index++) {
+            ColumnDefinition c = columns.get(index);
             TypeName type = c.getUnboxType();
+            String i = positionGen.apply(index);
+
+            if (c.isDirectAssociation()) {
+                SchemaDefinition associatedSchema = context.getSchemaDef(type);
+                int joinedColumnSize = sql.buildSelectColumnNames(associatedSchema).size();
+                if (partial) {
+                    // the joined columns are not in the cursor of a partial model
+                    joinedPosition += joinedColumnSize;
+                    continue;
+                }
+                CodeBlock.Builder rhsExprBuilder = CodeBlock.builder();
+                if (c.isNullableInSQL()) {
+                    rhsExprBuilder.add("cursor.isNull($L) ? null : ", i);
+                }
+                rhsExprBuilder.add("$L.newModelFromCursor(conn, cursor, $L + $L)",
+                        context.getSchemaInstanceExpr((ClassName) type), offset, joinedPosition);
+                builder.addStatement("$L$L", lhsBaseGen.apply(c), c.buildSetColumnExpr(rhsExprBuilder.build()));
+                joinedPosition += joinedColumnSize;
+                continue;
+            }
+
+            if (partial) {
+                builder.beginControlFlow("if ($L != -1)", i);
+            }
 
-            if (Types.isDirectAssociation(context, type)) {
-                ClassName className = (ClassName) type;
-                String singleAssocType = "SingleAssociation<" + className.simpleName() + ">";
-                context.addError("Direct association is not yet supported. Use " + singleAssocType + " instead.", c.element);
-            } else if (Types.isSingleAssociation(type)) {
+            if (Types.isSingleAssociation(type)) {
                 AssociationDefinition r = c.getAssociation();
                 CodeBlock.Builder getRhsExpr = CodeBlock.builder()
                         .add("new $T<>(conn, $L, cursor.getLong($L))",
@@ -563,6 +644,10 @@ public class SchemaWriter extends BaseWriter {
                 }
                 builder.addStatement("$L$L", lhsBaseGen.apply(c), c.buildSetColumnExpr(rhsExprBuilder.build()));
             }
+
+            if (partial) {
+                builder.endControlFlow();
+            }
         }
         return builder.build();
     }
@@ -592,6 +677,51 @@ public class SchemaWriter extends BaseWriter {
         return builder.build();
     }
 
+    private CodeBlock buildNewPartialModelFromCursor() {
+        CodeBlock.Builder builder = CodeBlock.builder();
+        Function<Integer, String> positionGen = index -> "positions[" + index + "]";
+        if (schema.hasDefaultConstructor()) {
+            builder.addStatement("$T model = new $T()", schema.getModelClassName(), schema.getModelClassName());
+            builder.add(buildPopulateValuesIntoCursor(column -> CodeBlock.builder().add("model.").build(),
+                    positionGen, true));
+            builder.addStatement("return model");
+        } else {
+            // columns not selected are left as the default values of their types
+            for (ColumnDefinition column : schema.getColumns()) {
+                builder.addStatement("$T $L = $L", column.getType(), column.name, defaultValueExpr(column.getType()));
+            }
+
+            builder.add(buildPopulateValuesIntoCursor(column -> CodeBlock.builder().build(), positionGen, true));
+
+            builder.addStatement("return new $T($L)", schema.getModelClassName(),
+                    schema.constructorElement.getParameters()
+                            .stream()
+                            .map(this::extractColumnNameFromParameterElement)
+                            .collect(Collectors.joining(", ")));
+        }
+        return builder.build();
+    }
+
+    private static String defaultValueExpr(TypeName type) {
+        if (type.equals(TypeName.BOOLEAN)) {
+            return "false";
+        } else if (type.equals(TypeName.CHAR)) {
+            return "'\\0'";
+        } else if (type.equals(TypeName.INT)) {
+            return "0";
+        } else if (type.equals(TypeName.LONG)) {
+            return "0L";
+        } else if (type.equals(TypeName.FLOAT)) {
+            return "0.0f";
+        } else if (type.equals(TypeName.DOUBLE)) {
+            return "0.0";
+        } else if (type.isPrimitive()) {
+            return "(" + type + ") 0";
+        } else {
+            return "null";
+        }
+    }
+
     private String extractColumnNameFromParameterElement(VariableElement parameterElement) {
         Setter setter = parameterElement.getAnnotation(Setter.class);
         if (setter != null && !Strings.isEmpty(setter.value())) {
@@ -602,7 +732,7 @@ public class SchemaWriter extends BaseWriter {
         return parameterElement.getSimpleName().toString();
     }
 
-    private String cursorGetter(ColumnDefinition column, int position) {
+    private String cursorGetter(ColumnDefinition column, String position) {
         TypeName type = column.getSerializedType();
         if (type.equals(TypeName.BOOLEAN)) {
             return "cursor.getLong(" + position + ") != 0";
@@ -16,8 +16,11 @@
 
 package com.github.gfx.android.orma.processor;
 
+import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 
 import java.util.ArrayList;
@@ -84,9 +87,100 @@ public class SelectorWriter extends BaseWriter {
                 .flatMap(this::buildOrderByHelpers)
                 .forEach(methodSpecs::add);
 
+        schema.getColumns()
+                .stream()
+                .flatMap(this::buildPluckHelpers)
+                .forEach(methodSpecs::add);
+
+        schema.getColumns()
+                .stream()
+                .flatMap(this::buildAggregateHelpers)
+                .forEach(methodSpecs::add);
+
         return methodSpecs;
     }
 
+    Stream<MethodSpec> buildPluckHelpers(ColumnDefinition column) {
+        TypeName type = column.getSerializedType();
+        String name = Strings.toUpperFirst(column.name);
+        AssociationDefinition r = column.getAssociation();
+
+        if (Types.looksLikeIntegerType(type) || (r != null && r.associationType.equals(Types.SingleAssociation))) {
+            return Stream.of(
+                    buildPluckHelper(column, "pluck" + name, ArrayTypeName.of(TypeName.LONG), "pluckLong"),
+                    MethodSpec.methodBuilder("forEach" + name)
+                            .addJavadoc("Calls {@code consumer} for each {@code $L} without boxing.\n", column.columnName)
+                            .addModifiers(Modifier.PUBLIC)
+                            .addParameter(ParameterSpec.builder(Types.LongConsumer, "consumer")
+                                    .addAnnotation(Specs.nonNullAnnotationSpec())
+                                    .build())
+                            .addStatement("forEachLong($T.$L, consumer)", schema.getSchemaClassName(), column.name)
+                            .build()
+            );
+        } else if (Types.looksLikeFloatType(type)) {
+            return Stream.of(buildPluckHelper(column, "pluck" + name, ArrayTypeName.of(TypeName.DOUBLE), "pluckDouble"));
+        } else if (type.equals(Types.String)) {
+            return Stream.of(buildPluckHelper(column, "pluck" + name, Types.StringArray, "pluckString"));
+        } else {
+            return Stream.empty();
+        }
+    }
+
+    Stream<MethodSpec> buildAggregateHelpers(ColumnDefinition column) {
+        TypeName type = column.getSerializedType();
+        if (column.getAssociation() != null) {
+            return Stream.empty();
+        } else if (Types.looksLikeIntegerType(type)) {
+            return Stream.of(
+                    buildAggregateHelper(column, "min", TypeName.LONG.box(), "aggregateAsLong", "MIN"),
+                    buildAggregateHelper(column, "max", TypeName.LONG.box(), "aggregateAsLong", "MAX"),
+                    buildAggregateHelper(column, "sum", TypeName.LONG, "sumAsLong", null),
+                    buildAggregateHelper(column, "avg", TypeName.DOUBLE.box(), "aggregateAsDouble", "AVG")
+            );
+        } else if (Types.looksLikeFloatType(type)) {
+            return Stream.of(
+                    buildAggregateHelper(column, "min", TypeName.DOUBLE.box(), "aggregateAsDouble", "MIN"),
+                    buildAggregateHelper(column, "max", TypeName.DOUBLE.box(), "aggregateAsDouble", "MAX"),
+                    buildAggregateHelper(column, "sum", TypeName.DOUBLE, "sumAsDouble", null),
+                    buildAggregateHelper(column, "avg", TypeName.DOUBLE.box(), "aggregateAsDouble", "AVG")
+            );
+        } else if (type.equals(Types.String)) {
+            return Stream.of(
+                    buildAggregateHelper(column, "min", Types.String, "aggregateAsString", "MIN"),
+                    buildAggregateHelper(column, "max", Types.String, "aggregateAsString", "MAX")
+            );
+        } else {
+            return Stream.empty();
+        }
+    }
+
+    MethodSpec buildAggregateHelper(ColumnDefinition column, String prefix, TypeName returnType, String helperName,
+            String function) {
+        MethodSpec.Builder builder = MethodSpec.methodBuilder(prefix + Strings.toUpperFirst(column.name))
+                .addModifiers(Modifier.PUBLIC)
+                .returns(returnType);
+        if (returnType.isPrimitive()) {
+            builder.addJavadoc("@return $L({@code $L}) computed in SQLite\n", prefix.toUpperCase(), column.columnName);
+            builder.addStatement("return $L($T.$L)", helperName, schema.getSchemaClassName(), column.name);
+        } else {
+            builder.addJavadoc("@return $L({@code $L}) computed in SQLite, or {@code null} for no rows\n",
+                    prefix.toUpperCase(), column.columnName);
+            builder.addAnnotation(Specs.nullableAnnotation());
+            builder.addStatement("return $L($S, $T.$L)", helperName, function, schema.getSchemaClassName(), column.name);
+        }
+        return builder.build();
+    }
+
+    MethodSpec buildPluckHelper(ColumnDefinition column, String methodName, TypeName returnType, String helperName) {
+        return MethodSpec.methodBuilder(methodName)
+                .addJavadoc("@return The values of {@code $L} without creating models\n", column.columnName)
+                .addAnnotation(Specs.nonNullAnnotationSpec())
+                .addModifiers(Modifier.PUBLIC)
+                .returns(returnType)
+                .addStatement("return $L($T.$L)", helperName, schema.getSchemaClassName(), column.name)
+                .build();
+    }
+
     boolean needsOrderByHelpers(ColumnDefinition column) {
         return (column.indexed || (column.primaryKey && (column.autoincrement || !column.autoId)));
     }
@@ -96,12 +190,14 @@ public class SelectorWriter extends BaseWriter {
                 MethodSpec.methodBuilder("orderBy" + Strings.toUpperFirst(column.name) + "Asc")
                         .addModifiers(Modifier.PUBLIC)
                         .returns(getTargetClassName())
-                        .addStatement("return orderBy($S)", sql.quoteIdentifier(column.columnName) + " ASC")
+                        .addStatement("return orderBy($T.$L.orderInAscending())", schema.getSchemaClassName(),
+                                column.name)
                         .build(),
                 MethodSpec.methodBuilder("orderBy" + Strings.toUpperFirst(column.name) + "Desc")
                         .addModifiers(Modifier.PUBLIC)
                         .returns(getTargetClassName())
-                        .addStatement("return orderBy($S)", sql.quoteIdentifier(column.columnName) + " DESC")
+                        .addStatement("return orderBy($T.$L.orderInDescending())", schema.getSchemaClassName(),
+                                column.name)
                         .build()
         );
     }
@@ -21,7 +21,9 @@ import com.squareup.javapoet.CodeBlock;
 
 import android.support.annotation.NonNull;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -102,7 +104,7 @@ public class SqlGenerator {
             constraints.add("COLLATE " + column.collate.name());
         }
 
-        if (Types.isSingleAssociation(column.type)) {
+        if (column.getAssociation() != null) {
             constraints.add(foreignKeyConstraints(column));
         }
 
@@ -185,6 +187,67 @@ public class SqlGenerator {
         return builder.build();
     }
 
+    /**
+     * @return The names of the columns of {@code schema}, followed by the columns of the models of its direct
+     * associations, which are aliased as {@code "association.column"} by {@link #buildSelectFromTableClause}
+     */
+    public List<String> buildSelectColumnNames(SchemaDefinition schema) {
+        return buildSelectColumnNames(schema, new ArrayDeque<>());
+    }
+
+    private List<String> buildSelectColumnNames(SchemaDefinition schema, Deque<SchemaDefinition> path) {
+        if (path.contains(schema)) {
+            throw new ProcessingException("Direct associations must not be circular", schema.getElement());
+        }
+        path.push(schema);
+
+        List<String> names = new ArrayList<>();
+        schema.getColumns().forEach(column -> names.add(column.columnName));
+        schema.getColumns().stream()
+                .filter(ColumnDefinition::isDirectAssociation)
+                .forEach(column -> {
+                    SchemaDefinition associatedSchema = context.getSchemaDef(column.type);
+                    buildSelectColumnNames(associatedSchema, path)
+                            .forEach(name -> names.add(column.columnName + "." + name));
+                });
+
+        path.pop();
+        return names;
+    }
+
+    /**
+     * Builds the FROM clause of SELECT, which joins the models of direct associations so that they are
+     * hydrated from the same rows as {@code schema}. The joined columns are aliased in subqueries in order not to
+     * make the column names of {@code schema} ambiguous.
+     *
+     * @return The escaped table name, followed by {@code LEFT OUTER JOIN} for each direct association
+     */
+    public String buildSelectFromTableClause(SchemaDefinition schema) {
+        StringBuilder sb = new StringBuilder();
+        appendIdentifier(sb, schema.getTableName());
+
+        schema.getColumns().stream()
+                .filter(ColumnDefinition::isDirectAssociation)
+                .forEach(column -> {
+                    SchemaDefinition associatedSchema = context.getSchemaDef(column.type);
+
+                    sb.append(" LEFT OUTER JOIN (SELECT ");
+                    sb.append(buildSelectColumnNames(associatedSchema)
+                            .stream()
+                            .map(name -> quoteIdentifier(name) + " AS "
+                                    + quoteIdentifier(column.columnName + "." + name))
+                            .collect(Collectors.joining(", ")));
+                    sb.append(" FROM ");
+                    sb.append(buildSelectFromTableClause(associatedSchema));
+                    sb.append(") ON ");
+                    appendIdentifier(sb, column.columnName);
+                    sb.append(" = ");
+                    appendIdentifier(sb, column.columnName + "." + column.getAssociatedPrimaryKey().columnName);
+                });
+
+        return sb.toString();
+    }
+
     public String buildDropTableStatement(SchemaDefinition schema) {
         StringBuilder sb = new StringBuilder();
         sb.append("DROP TABLE IF EXISTS ");
@@ -97,12 +97,16 @@ public class Types {
 
     public static final ClassName TransactionTask = ClassName.get(ormaPackageName, "TransactionTask");
 
+    public static final ClassName WritePriority = ClassName.get(ormaPackageName, "WritePriority");
+
     public static final ClassName Inserter = ClassName.get(ormaPackageName, "Inserter");
 
     public static final ClassName SingleAssociation = ClassName.get(ormaPackageName, "SingleAssociation");
 
     public static final ClassName ModelFactory = ClassName.get(ormaPackageName, "ModelFactory");
 
+    public static final ClassName LongConsumer = ClassName.get(ormaPackageName, "LongConsumer");
+
     public static final ClassName MigrationEngine = ClassName.get(ormaPackageName + ".migration", "MigrationEngine");
 
     public static final ClassName TypeHolder = ClassName.get(ormaPackageName + ".internal", "TypeHolder");
@@ -15,6 +15,7 @@
  */
 package com.github.gfx.android.orma.processor;
 
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.ParameterSpec;
 import com.squareup.javapoet.TypeSpec;
@@ -87,6 +88,26 @@ public class UpdaterWriter extends BaseWriter {
                                 .build()
                 );
 
+            } else if (column.isDirectAssociation()) {
+                CodeBlock valueExpr = column.buildSerializeExpr("conn", column.name);
+                if (column.isNullableInJava()) {
+                    valueExpr = CodeBlock.builder()
+                            .add("$L != null ? $L : null", column.name, valueExpr)
+                            .build();
+                }
+                methodSpecs.add(
+                        MethodSpec.methodBuilder(column.name)
+                                .addModifiers(Modifier.PUBLIC)
+                                .returns(schema.getUpdaterClassName())
+                                .addParameter(
+                                        ParameterSpec.builder(column.getType(), column.name)
+                                                .addAnnotations(conditionQueryHelpers.nullabilityAnnotations(column))
+                                                .build()
+                                )
+                                .addStatement("contents.put($S, $L)", sql.quoteIdentifier(column.columnName), valueExpr)
+                                .addStatement("return this")
+                                .build()
+                );
             } else { // SingleAssociation<T>
                 methodSpecs.add(
                         MethodSpec.methodBuilder(column.name)